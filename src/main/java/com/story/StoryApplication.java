@@ -1,6 +1,11 @@
 package com.story;
 
+import java.nio.file.Paths;
 import java.util.*;
+import com.story.algorithm.CoveragePlan;
+import com.story.algorithm.PathResultCache;
+import com.story.algorithm.PathStatistics;
+import com.story.algorithm.SearchEngine;
 import com.story.algorithm.StoryPathFinder;
 import com.story.model.*;
 import com.story.simulator.StoryPathSimulator;
@@ -10,6 +15,8 @@ public class StoryApplication {
     
     private Story story;
     private StoryPath lastFoundPath;
+    // Optimal paths found in earlier runs, reused while the story is unchanged
+    private final PathResultCache resultCache = new PathResultCache(Paths.get(".story-cache"));
     
     public static void main(String[] args) {
         System.out.println("╔═══════════════════════════════════════════════════════╗");
@@ -57,11 +64,20 @@ public class StoryApplication {
                         simulationMode(scanner);
                         break;
                     case "3":
+                        endingTableMode(scanner);
+                        break;
+                    case "4":
+                        tradeOffMode(scanner);
+                        break;
+                    case "5":
+                        coveragePlanMode(scanner);
+                        break;
+                    case "6":
                         running = false;
                         System.out.println("\u001B[34m"+"Thank you for using the Branching Narrative Optimization System!"+ "\u001B[0m");
                         break;
                     default:
-                        System.out.println("\u001B[31m"+"Invalid choice. Please enter 1, 2, or 3."+ "\u001B[0m");
+                        System.out.println("\u001B[31m"+"Invalid choice. Please enter 1, 2, 3, 4, 5, or 6."+ "\u001B[0m");
                         break;
                 }
                   if (running) {
@@ -82,9 +98,12 @@ public class StoryApplication {
         System.out.println("=".repeat(60));
         System.out.println("1. Find Optimal Path (Backtracking Algorithm)");
         System.out.println("2. Play Story Simulation");
-        System.out.println("3. Exit");
+        System.out.println("3. Best Path to Every Ending");
+        System.out.println("4. Trade-offs: CGs vs Length vs Ending");
+        System.out.println("5. Collect Every CG: Fewest Playthroughs");
+        System.out.println("6. Exit");
         System.out.println("=".repeat(60));
-        System.out.print("Enter your choice (1-3): ");
+        System.out.print("Enter your choice (1-6): ");
     }
     
     // Mode 1: Find optimal path using backtracking
@@ -118,7 +137,8 @@ public class StoryApplication {
         System.out.println("Target: " + selectedCharacter.toUpperCase() + "'s " + selectedEndingType.toUpperCase() + " ending");
         System.out.println("Looking for optimal path to: " + targetNode.getTitle());
         
-        StoryPathFinder pathFinder = new StoryPathFinder(story);
+        StoryPathFinder pathFinder = createPathFinder();
+        pathFinder.setResultCache(resultCache);
         StoryPath optimalPath = pathFinder.findOptimalPathToSpecificEnding(targetEndingNodeId);
         
         if (optimalPath != null) {
@@ -137,6 +157,135 @@ public class StoryApplication {
         }
     }
     
+    // Mode 3: Best path to every ending, computed in a single search
+    private void endingTableMode(Scanner scanner) {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("                  \u001B[44mBEST PATH TO EVERY ENDING\u001B[0m");
+        System.out.println("=".repeat(60));
+        
+        StoryPathFinder pathFinder = createPathFinder();
+        Map<String, StoryPath> bestPaths = pathFinder.findOptimalPathsForAllEndings();
+        
+        List<StoryNode> endings = new ArrayList<>(story.getEndingNodes());
+        endings.sort(Comparator.comparing(StoryNode::getId));
+        
+        System.out.println("\u001B[34m"+"\nEnding Table:"+ "\u001B[0m");
+        for (int i = 0; i < endings.size(); i++) {
+            StoryNode ending = endings.get(i);
+            StoryPath path = bestPaths.get(ending.getId());
+            String summary = path == null
+                             ? "\u001B[31m" + "not reachable" + "\u001B[0m"
+                             : "Score: " + path.calculateScore() + ", CGs: " + path.getCgCount() + "/" + story.getTotalCgCount()
+                               + ", Length: " + path.getPathLength() + " scenes";
+            System.out.println(String.format("%2d", i + 1) + ". " + ending.getTitle() + " (" + ending.getId() + ") - " + summary);
+        }
+        
+        System.out.print("\nSelect an ending to show its route (Enter to skip): ");
+        String choice = scanner.nextLine().trim();
+        if (choice.isEmpty()) {
+            return;
+        }
+        
+        try {
+            int choiceNum = Integer.parseInt(choice);
+            StoryPath path = choiceNum >= 1 && choiceNum <= endings.size()
+                             ? bestPaths.get(endings.get(choiceNum - 1).getId())
+                             : null;
+            if (path != null) {
+                lastFoundPath = path;
+                displayOptimalPath(path);
+            } else {
+                System.out.println("\u001B[31m"+"Invalid choice."+ "\u001B[0m");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("\u001B[31m"+"Invalid input."+ "\u001B[0m");
+        }
+    }
+
+    // Mode 4: Pareto-optimal paths over CGs, path length and ending
+    private void tradeOffMode(Scanner scanner) {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("              \u001B[44mTRADE-OFFS: CGs vs LENGTH vs ENDING\u001B[0m");
+        System.out.println("=".repeat(60));
+        
+        StoryPathFinder pathFinder = createPathFinder();
+        List<StoryPath> paths = pathFinder.findParetoOptimalPaths();
+        if (paths.isEmpty()) {
+            System.out.println("\u001B[31m"+"No path reaches an ending."+ "\u001B[0m");
+            return;
+        }
+        
+        System.out.println("\u001B[34m"+"\nPareto-optimal routes: more CGs only at the cost of more scenes or a worse ending"+ "\u001B[0m");
+        for (int i = 0; i < paths.size(); i++) {
+            StoryPath path = paths.get(i);
+            System.out.println(String.format("%2d", i + 1) + ". CGs: " + path.getCgCount() + "/" + story.getTotalCgCount()
+                             + ", Length: " + path.getPathLength() + " scenes, Ending: " + path.getEndingType()
+                             + " (" + path.getCurrentNode() + ")");
+        }
+        
+        System.out.print("\nSelect a path to show its route (Enter to skip): ");
+        String choice = scanner.nextLine().trim();
+        if (choice.isEmpty()) {
+            return;
+        }
+        
+        try {
+            int choiceNum = Integer.parseInt(choice);
+            if (choiceNum >= 1 && choiceNum <= paths.size()) {
+                lastFoundPath = paths.get(choiceNum - 1);
+                displayOptimalPath(lastFoundPath);
+            } else {
+                System.out.println("\u001B[31m"+"Invalid choice."+ "\u001B[0m");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("\u001B[31m"+"Invalid input."+ "\u001B[0m");
+        }
+    }
+
+    // Mode 5: Fewest playthroughs that together unlock every CG
+    private void coveragePlanMode(Scanner scanner) {
+        System.out.println("\n" + "=".repeat(60));
+        System.out.println("            \u001B[44mCOLLECT EVERY CG: FEWEST PLAYTHROUGHS\u001B[0m");
+        System.out.println("=".repeat(60));
+        
+        StoryPathFinder pathFinder = createPathFinder();
+        CoveragePlan plan = pathFinder.findCgCoveragePlan();
+        List<StoryPath> paths = plan.getPaths();
+        if (paths.isEmpty()) {
+            System.out.println("\u001B[31m"+"No path collects any CG."+ "\u001B[0m");
+            return;
+        }
+        
+        System.out.println("\u001B[34m"+"\nPlaythroughs, each adding the CGs the earlier ones missed:"+ "\u001B[0m");
+        Set<String> collected = new HashSet<>();
+        for (int i = 0; i < paths.size(); i++) {
+            StoryPath path = paths.get(i);
+            Set<String> newCgs = new TreeSet<>(path.getCollectedCgs());
+            newCgs.removeAll(collected);
+            collected.addAll(path.getCollectedCgs());
+            System.out.println(String.format("%2d", i + 1) + ". New CGs: " + newCgs.size() + " (" + collected.size() + "/"
+                             + story.getTotalCgCount() + " total), Length: " + path.getPathLength() + " scenes, Ending: "
+                             + path.getEndingType() + " (" + path.getCurrentNode() + ")");
+        }
+        
+        System.out.print("\nSelect a playthrough to show its route (Enter to skip): ");
+        String choice = scanner.nextLine().trim();
+        if (choice.isEmpty()) {
+            return;
+        }
+        
+        try {
+            int choiceNum = Integer.parseInt(choice);
+            if (choiceNum >= 1 && choiceNum <= paths.size()) {
+                lastFoundPath = paths.get(choiceNum - 1);
+                displayOptimalPath(lastFoundPath);
+            } else {
+                System.out.println("\u001B[31m"+"Invalid choice."+ "\u001B[0m");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("\u001B[31m"+"Invalid input."+ "\u001B[0m");
+        }
+    }
 
     private String selectCharacter(Scanner scanner) {
         System.out.println("\n============== \u001B[34mAvailable Characters\u001B[0m ==============");
@@ -338,7 +487,7 @@ public class StoryApplication {
                 
                 // Show final statistics
                 StoryPath completedPath = new StoryPath(pathTaken, choicesMade, collectedCgs, 
-                                                      currentNode.getEndingType(), true);
+                                                      currentNode.getEndingType(), true, story.getScoringModel());
                 System.out.println("\u001B[34m"+"\nYour Journey Statistics:"+ "\u001B[0m");
                 System.out.println("  Score: " + completedPath.calculateScore());
                 System.out.println("  CGs Collected: " + collectedCgs.size() + "/" + story.getTotalCgCount());
@@ -441,67 +590,57 @@ public class StoryApplication {
     }
     
 
+    // Finder for the menu modes. AUTO measures the story first: small stories are still
+    // searched exhaustively, while one too large to enumerate gets a bounded engine
+    // instead of a search that would never finish.
+    private StoryPathFinder createPathFinder() {
+        StoryPathFinder pathFinder = new StoryPathFinder(story);
+        pathFinder.setEngine(SearchEngine.AUTO);
+        return pathFinder;
+    }
+
     private void performDetailedAnalysis(StoryPathFinder pathFinder, Story story) {
         System.out.println("\u001B[34m"+"\n============== DETAILED ALGORITHM ANALYSIS ==============\n"+ "\u001B[0m");
         
-        List<StoryPath> allPaths = pathFinder.getAllPaths();
+        // Summary the search accumulated while it ran, so it covers paths it did not keep
+        PathStatistics statistics = pathFinder.getStatistics();
         
         System.out.println("\u001B[34m"+"Search Performance:"+ "\u001B[0m");
         System.out.println("  Total paths explored: " + pathFinder.getExploredPathsCount());
-        System.out.println("  Complete paths found: " + allPaths.size());
+        System.out.println("  Complete paths found: " + statistics.getPathCount());
         
-        if (!allPaths.isEmpty()) {
-            // Calculate statistics
-            OptionalDouble avgScore = allPaths.stream().mapToInt(StoryPath::calculateScore).average();
-            OptionalDouble avgCgs = allPaths.stream().mapToInt(StoryPath::getCgCount).average();
-            OptionalDouble avgLength = allPaths.stream().mapToInt(StoryPath::getPathLength).average();
-            
-            int maxScore = allPaths.stream().mapToInt(StoryPath::calculateScore).max().orElse(0);
-            int minScore = allPaths.stream().mapToInt(StoryPath::calculateScore).min().orElse(0);
-            
-            System.out.println("  Score range: " + minScore + " - " + maxScore);
-            System.out.println("  Average score: " + String.format("%.1f", avgScore.orElse(0.0)));
-            System.out.println("  Average CGs: " + String.format("%.1f", avgCgs.orElse(0.0)));
-            System.out.println("  Average path length: " + String.format("%.1f", avgLength.orElse(0.0)));
+        if (!statistics.isEmpty()) {
+            System.out.println("  Score range: " + statistics.getMinScore() + " - " + statistics.getMaxScore());
+            System.out.println("  Average score: " + String.format("%.1f", statistics.getAverageScore()));
+            System.out.println("  Average CGs: " + String.format("%.1f", statistics.getAverageCgCount()));
+            System.out.println("  Average path length: " + String.format("%.1f", statistics.getAverageLength()));
             
             // Top paths
-            System.out.println("\u001B[34m"+"\nTop 3 Paths by Score:"+ "\u001B[0m");
-            List<StoryPath> sortedPaths = new ArrayList<>(allPaths);
-            sortedPaths.sort((a, b) -> Integer.compare(b.calculateScore(), a.calculateScore()));
-            
-            for (int i = 0; i < Math.min(3, sortedPaths.size()); i++) {
-                StoryPath path = sortedPaths.get(i);
-                System.out.println("  " + (i + 1) + ". Score: " + path.calculateScore() + 
-                                 ", CGs: " + path.getCgCount() + 
-                                 ", Ending: " + path.getEndingType());
+            List<StoryPath> sortedPaths = pathFinder.getBestPaths(3);
+            if (!sortedPaths.isEmpty()) {
+                System.out.println("\u001B[34m"+"\nTop 3 Paths by Score:"+ "\u001B[0m");
+                
+                for (int i = 0; i < Math.min(3, sortedPaths.size()); i++) {
+                    StoryPath path = sortedPaths.get(i);
+                    System.out.println("  " + (i + 1) + ". Score: " + path.calculateScore() + 
+                                     ", CGs: " + path.getCgCount() + 
+                                     ", Ending: " + path.getEndingType());
+                }
             }
             
             // Ending distribution
-            Map<String, Long> endingCounts = allPaths.stream()
-                                                    .collect(java.util.stream.Collectors.groupingBy(
-                                                        StoryPath::getEndingType,
-                                                        java.util.stream.Collectors.counting()
-                                                    ));
-            
             System.out.println("\u001B[34m"+"\nEnding Type Distribution:"+ "\u001B[0m");
-            endingCounts.forEach((type, count) -> 
+            statistics.getEndingTypeCounts().forEach((type, count) -> 
                 System.out.println("  " + type.toUpperCase() + ": " + count + " paths")
             );
             
             // CG analysis
-            Map<String, Long> cgFrequency = allPaths.stream()
-                                                  .flatMap(path -> path.getCollectedCgs().stream())
-                                                  .collect(java.util.stream.Collectors.groupingBy(
-                                                      cg -> cg,
-                                                      java.util.stream.Collectors.counting()
-                                                  ));
-            
             System.out.println("\u001B[34m"+"\nCG Collection Frequency:"+ "\u001B[0m");
-            cgFrequency.entrySet().stream()
+            statistics.getCgFrequency().entrySet().stream()
                       .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
                       .limit(5)
                       .forEach(entry -> {
-                          double percentage = (entry.getValue() * 100.0) / allPaths.size();
+                          double percentage = (entry.getValue() * 100.0) / statistics.getPathCount();
                           System.out.println("  " + entry.getKey() + ": " + 
                                            String.format("%.1f%%", percentage) + " of paths");
                       });
@@ -0,0 +1,42 @@
+package com.story.algorithm;
+
+// Keeps every complete path in discovery order, in a PathTrie so that paths
+// sharing a prefix share its storage.
+final class AllPathsCollector implements PathCollector {
+    private final CompiledStoryGraph graph;
+    private final PathTrie paths;
+    private final PathStatistics statistics;
+
+    AllPathsCollector(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.paths = new PathTrie(graph);
+        this.statistics = new PathStatistics(graph);
+    }
+
+    @Override
+    public void collect(WorkingPath path, int endingNode) {
+        paths.add(path, endingNode);
+        statistics.add(path, endingNode);
+    }
+
+    @Override
+    public void append(PathCollector later) {
+        AllPathsCollector other = (AllPathsCollector) later;
+        paths.append(other.paths);
+        statistics.merge(other.statistics);
+    }
+
+    @Override
+    public PathCollector newEmpty() {
+        return new AllPathsCollector(graph);
+    }
+
+    @Override
+    public PathStatistics getStatistics() {
+        return statistics;
+    }
+
+    PathTrie getPaths() {
+        return paths;
+    }
+}
@@ -0,0 +1,146 @@
+package com.story.algorithm;
+
+import com.story.model.*;
+
+// Exhaustive depth-first enumeration of complete paths on a compiled graph.
+// Every instance owns its working path, results and counters, so several can
+// run side by side over the same graph.
+final class BacktrackingSearch {
+    private final CompiledStoryGraph graph;
+    // Ending node that counts as complete, or -1 for any ending
+    private final int target;
+    // Nodes that can still reach the target, or null when any ending counts
+    private final boolean[] canReachTarget;
+    private final FrameStack frames;
+    private final WorkingPath path;
+    private final PathCollector collector;
+    private final int[] nodeVisitCount;
+    private int exploredPaths;
+    private StoryPath bestPath;
+    private int bestScore;
+    private boolean reportProgress;
+    // Budgets and incumbent of the running query, or null when unlimited
+    private SearchControl control;
+
+    BacktrackingSearch(CompiledStoryGraph graph, int target, PathCollector collector) {
+        this.graph = graph;
+        this.target = target;
+        this.canReachTarget = target >= 0 ? graph.getNodesReaching(target) : null;
+        this.frames = new FrameStack(graph);
+        this.path = frames.getPath();
+        this.collector = collector;
+        this.nodeVisitCount = new int[graph.getNodeCount()];
+    }
+
+    void setReportProgress(boolean reportProgress) {
+        this.reportProgress = reportProgress;
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    // Replays a step that was already taken before this search starts, so the
+    // search can continue a subtree below an existing prefix.
+    void pushPrefix(int node, int edge) {
+        frames.pushPrefix(node, edge);
+    }
+
+    void run(int node) {
+        backtrack(node);
+    }
+
+    PathCollector getCollector() {
+        return collector;
+    }
+
+    int getExploredPaths() {
+        return exploredPaths;
+    }
+
+    int[] getNodeVisitCount() {
+        return nodeVisitCount;
+    }
+
+    // First path with the highest score, matching a stable sort of the results.
+    // Only improvements are materialized, so this costs nothing for the collector.
+    StoryPath getBestPath() {
+        return bestPath;
+    }
+
+    // Explores every path from start. Recursion is replaced by the frame stack, so
+    // depth is only limited by the heap, and choices are tried in the same order as a
+    // recursive search would.
+    private void backtrack(int start) {
+        enter(start);
+
+        while (!frames.isEmpty()) {
+            int node = frames.getTopNode();
+
+            if (frames.hasNextChoice() && (control == null || !control.isStopped())) {
+                int edge = frames.nextChoice();
+                int next = graph.getDestination(edge);
+
+                if (canReachTarget != null && (next < 0 || !canReachTarget[next])) {
+                    // Branch can never reach the target ending
+                    continue;
+                }
+                if (next < 0 || frames.canStep(node, next)) {
+                    path.pushChoice(edge);
+                    if (!enter(next)) {
+                        path.popChoice();
+                    }
+                }
+            } else {
+                frames.pop();
+            }
+        }
+    }
+
+    // Counts a step into node, which is -1 for a missing destination. Endings are
+    // recorded at once; any other node gets a frame. Returns true if a frame was pushed.
+    private boolean enter(int node) {
+        if (control != null && control.tick()) {
+            return false;
+        }
+        exploredPaths++;
+        if (node < 0) {
+            return false;
+        }
+
+        nodeVisitCount[node]++;
+
+        if (graph.isEnding(node)) {
+            if (target < 0 || node == target) {
+                path.pushNode(node);
+                record(node);
+                path.popNode();
+            }
+            return false;
+        }
+
+        frames.push(node);
+        return true;
+    }
+
+    private void record(int endingNode) {
+        collector.collect(path, endingNode);
+        int score = path.getScore(endingNode);
+        if (bestPath == null || score > bestScore) {
+            bestPath = path.toCompletePath(graph.getEndingType(endingNode));
+            bestScore = score;
+            if (control != null) {
+                control.offer(bestPath);
+            }
+        }
+
+        if (reportProgress) {
+            long found = collector.getStatistics().getPathCount();
+            if (target < 0 && found % 10 == 0) {
+                System.out.println("Found " + found + " complete paths so far...");
+            } else if (target >= 0 && found % 5 == 0) {
+                System.out.println("Found " + found + " paths to target ending so far...");
+            }
+        }
+    }
+}
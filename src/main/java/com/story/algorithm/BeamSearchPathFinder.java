@@ -0,0 +1,288 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Approximate path finder for stories too large for an exhaustive search.
+// The frontier is expanded one choice level at a time and only the beamWidth
+// partial paths with the best optimistic estimate (CGs collected so far plus
+// everything still reachable, plus the best reachable ending bonus) survive to
+// the next level. Memory and time grow with width times depth instead of with
+// the number of paths, at the cost of possibly missing the optimum.
+public class BeamSearchPathFinder {
+    public static final int DEFAULT_BEAM_WIDTH = 64;
+
+    private final Story story;
+    private final CompiledStoryGraph graph;
+    private int beamWidth;
+
+    // Last query, so its answer can be checked against the optimum
+    private StoryPath lastPath;
+    private String lastEndingType;
+    private String lastTargetId;
+    private int expandedStates;
+    private int levels;
+    private int maxFrontier;
+    // Budgets of the running query, or null when unlimited
+    private SearchControl control;
+    // Whether queries report their progress and results on the console
+    private boolean verbose;
+
+    public BeamSearchPathFinder(Story story) {
+        this(CompiledStoryGraph.compile(story));
+    }
+
+    public BeamSearchPathFinder(CompiledStoryGraph graph) {
+        this.story = graph.getStory();
+        this.graph = graph;
+        this.beamWidth = DEFAULT_BEAM_WIDTH;
+        this.verbose = true;
+    }
+
+    // Number of partial paths kept per level.
+    public void setBeamWidth(int beamWidth) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be at least 1: " + beamWidth);
+        }
+        this.beamWidth = beamWidth;
+    }
+
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    // Turns the console reports of the following queries on or off, including the
+    // exact search of reportOptimalityGap.
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    public StoryPath findBestPath() {
+        return findBestPath(null);
+    }
+
+    // Best path the beam finds to an ending of the preferred type, falling back to any
+    // ending when none of that type is found.
+    public StoryPath findBestPath(String preferredEndingType) {
+        lastEndingType = preferredEndingType;
+        lastTargetId = null;
+        log("Starting beam search (width " + beamWidth + ") for optimal path...");
+
+        StoryPath best = search(ReachabilityBounds.forEndingType(graph, preferredEndingType));
+        if (best == null && preferredEndingType != null) {
+            log("No paths found with ending type: " + preferredEndingType);
+            log("Falling back to all paths.");
+            best = search(ReachabilityBounds.forEndingType(graph, null));
+        }
+        return finish(best);
+    }
+
+    public StoryPath findBestPathToSpecificEnding(String targetEndingNodeId) {
+        lastEndingType = null;
+        lastTargetId = targetEndingNodeId;
+        int target = graph.getNodeIndex(targetEndingNodeId);
+        if (target < 0 || !graph.isEnding(target)) {
+            log("\u001B[31m"+"Target node not found or not an ending: " + targetEndingNodeId+ "\u001B[0m");
+            return finish(null);
+        }
+        log("Starting beam search (width " + beamWidth + ") for specific ending...");
+        return finish(search(ReachabilityBounds.forTarget(graph, target)));
+    }
+
+    // Solves the last query exactly, within the given node budget (0 for none), and
+    // prints how far the beam answer is from the optimum. Returns the score gap, or
+    // -1 if the optimum could not be proven within the budget.
+    public int reportOptimalityGap(long nodeBudget) {
+        StoryPathFinder exact = new StoryPathFinder(graph);
+        exact.setEngine(SearchEngine.DYNAMIC_PROGRAMMING);
+        exact.setVerbose(verbose);
+        exact.setNodeBudget(nodeBudget);
+        SearchResult result = lastTargetId != null
+                              ? exact.findOptimalPathToSpecificEndingWithinBudget(lastTargetId)
+                              : exact.findOptimalPathWithinBudget(lastEndingType);
+
+        log("\u001B[44m"+"\n============== BEAM SEARCH QUALITY ==============="+"\u001B[0m");
+        int beamScore = lastPath != null ? lastPath.calculateScore() : 0;
+        log("Beam score: " + (lastPath != null ? beamScore : "no path"));
+        if (!result.isProvenOptimal()) {
+            log("Optimum not proven within the budget (" + result.getStopReason() + ").");
+            return -1;
+        }
+
+        int optimalScore = result.getPath() != null ? result.getPath().calculateScore() : 0;
+        if (lastEndingType != null && lastPath != null && result.getPath() != null
+                && lastEndingType.equals(result.getPath().getEndingType())
+                && !lastEndingType.equals(lastPath.getEndingType())) {
+            // The beam fell back to another ending type although the preferred one is reachable
+            log("Beam search missed every " + lastEndingType + " ending.");
+            beamScore = 0;
+        }
+        int gap = optimalScore - beamScore;
+        log("Optimal score: " + (result.getPath() != null ? optimalScore : "no path"));
+        log("Gap: " + gap + " points" + (optimalScore > 0
+            ? String.format(" (%.1f%% of optimum)", gap * 100.0 / optimalScore) : ""));
+        return gap;
+    }
+
+    public int getExpandedStates() {
+        return expandedStates;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public int getMaxFrontierSize() {
+        return maxFrontier;
+    }
+
+    private StoryPath finish(StoryPath best) {
+        lastPath = best;
+        log("Beam search complete. Expanded " + expandedStates + " partial paths over "
+            + levels + " levels (largest frontier " + maxFrontier + ").");
+        if (best == null) {
+            log("\u001B[31m"+"No complete path found."+"\u001B[0m");
+        } else {
+            log("Best path found: score " + best.calculateScore() + ", CGs "
+                + best.getCgCount() + "/" + story.getTotalCgCount() + ", ending " + best.getEndingType());
+        }
+        return best;
+    }
+
+    // Runs the beam over the endings the bounds accept, without printing. A search
+    // stopped by its budget returns the best complete path found so far.
+    StoryPath search(ReachabilityBounds bounds) {
+        expandedStates = 0;
+        levels = 0;
+        maxFrontier = 0;
+
+        int start = graph.getStartIndex();
+        if (start < 0 || !bounds.canReachAcceptedEnding(start)) {
+            return null;
+        }
+
+        int nodeWords = CgBits.wordCount(graph.getNodeCount());
+        BeamState best = null;
+        List<BeamState> frontier = new ArrayList<>();
+        BeamState root = new BeamState(null, start, -1, collect(new long[graph.getCgIndex().wordCount()], start),
+                                       new long[nodeWords], bounds);
+        if (graph.isEnding(start)) {
+            if (!bounds.isAccepting(start)) {
+                return null;
+            }
+            StoryPath path = materialize(root);
+            if (control != null) {
+                control.offer(path);
+            }
+            return path;
+        }
+        frontier.add(root);
+
+        while (!frontier.isEmpty()) {
+            levels++;
+            maxFrontier = Math.max(maxFrontier, frontier.size());
+            List<BeamState> next = new ArrayList<>();
+
+            for (BeamState state : frontier) {
+                if (control != null && control.tick()) {
+                    return best != null ? materialize(best) : null;
+                }
+                expandedStates++;
+                int node = state.node;
+                long[] visited = state.visited.clone();
+                boolean wasOnPath = CgBits.contains(visited, node);
+                CgBits.set(visited, node);
+
+                for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                    int child = graph.getDestination(edge);
+                    // Same rule as the exhaustive search: a node's own self-loop may be taken once
+                    if (child < 0 || (child == node ? wasOnPath : CgBits.contains(visited, child))
+                            || !bounds.canReachAcceptedEnding(child)) {
+                        continue;
+                    }
+
+                    BeamState successor = new BeamState(state, child, edge, collect(state.cgBits, child), visited, bounds);
+                    if (best != null && successor.estimate <= best.estimate) {
+                        // Cannot beat the best complete path, and the earlier path wins ties
+                        continue;
+                    }
+                    if (graph.isEnding(child)) {
+                        // Exact score: nothing is left to collect after an ending
+                        best = successor;
+                        if (control != null) {
+                            control.offer(materialize(best));
+                        }
+                    } else {
+                        next.add(successor);
+                    }
+                }
+            }
+
+            // Stable sort, so equal estimates keep the order they were found in
+            next.sort((a, b) -> Integer.compare(b.estimate, a.estimate));
+            frontier = next.size() > beamWidth ? new ArrayList<>(next.subList(0, beamWidth)) : next;
+        }
+
+        return best != null ? materialize(best) : null;
+    }
+
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
+    // Bits of collected plus the CGs of node, as a new array.
+    private long[] collect(long[] collected, int node) {
+        long[] result = collected.clone();
+        for (int slot = graph.getCgStart(node); slot < graph.getCgEnd(node); slot++) {
+            CgBits.set(result, graph.getCgAt(slot));
+        }
+        return result;
+    }
+
+    private StoryPath materialize(BeamState end) {
+        LinkedList<String> nodeSequence = new LinkedList<>();
+        LinkedList<Choice> choiceSequence = new LinkedList<>();
+        for (BeamState state = end; state != null; state = state.parent) {
+            nodeSequence.addFirst(graph.getNodeId(state.node));
+            if (state.edge >= 0) {
+                choiceSequence.addFirst(graph.getChoice(state.edge));
+            }
+        }
+        return new StoryPath(new ArrayList<>(nodeSequence), new ArrayList<>(choiceSequence),
+                             graph.getCgIndex(), end.cgBits, graph.getEndingType(end.node), true,
+                             graph.getScoringModel());
+    }
+
+    // A partial path, linked to its parent. visited holds the nodes before this one.
+    private static final class BeamState {
+        final BeamState parent;
+        final int node;
+        final int edge;
+        final long[] cgBits;
+        final long[] visited;
+        // Number of nodes from the start up to and including this one
+        final int length;
+        // Optimistic final score; exact once node is an ending
+        final int estimate;
+
+        BeamState(BeamState parent, int node, int edge, long[] cgBits, long[] visited, ReachabilityBounds bounds) {
+            this.parent = parent;
+            this.node = node;
+            this.edge = edge;
+            this.cgBits = cgBits;
+            this.visited = visited;
+            this.length = parent != null ? parent.length + 1 : 1;
+            this.estimate = bounds.upperBound(cgBits, node, length);
+        }
+    }
+}
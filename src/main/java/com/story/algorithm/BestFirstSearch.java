@@ -0,0 +1,165 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Exact best-first (A*) search for the highest-scoring path.
+// Partial paths wait in a priority queue ordered by their optimistic final score:
+// CGs collected so far plus every CG still reachable, plus the best reachable
+// ending bonus. The estimate never underestimates, and it is exact once a path
+// reaches an ending, so the first complete path taken from the queue is optimal.
+// Equal estimates are taken in choice order, which makes the result the same
+// first-found optimum the depth-first search reports.
+final class BestFirstSearch {
+    private static final Comparator<Label> BEST_FIRST = (a, b) -> {
+        if (a.estimate != b.estimate) {
+            return Integer.compare(b.estimate, a.estimate);
+        }
+        return compareChoices(a.edges, b.edges);
+    };
+
+    private final CompiledStoryGraph graph;
+    private final ReachabilityBounds bounds;
+    private final int[] nodeVisitCount;
+    private int generatedStates;
+    private int expandedStates;
+    // Budgets of the running query, or null when unlimited
+    private SearchControl control;
+
+    BestFirstSearch(CompiledStoryGraph graph, ReachabilityBounds bounds) {
+        this.graph = graph;
+        this.bounds = bounds;
+        this.nodeVisitCount = new int[graph.getNodeCount()];
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    // Returns the optimal path, or null if no accepted ending is reachable. A search
+    // stopped by its budget returns the best complete path generated so far.
+    StoryPath findOptimalPath() {
+        int start = graph.getStartIndex();
+        if (start < 0 || !bounds.canReachAcceptedEnding(start)) {
+            return null;
+        }
+
+        PriorityQueue<Label> queue = new PriorityQueue<>(BEST_FIRST);
+        Label root = new Label(start, new int[0], collect(new long[graph.getCgIndex().wordCount()], start),
+                               new long[CgBits.wordCount(graph.getNodeCount())]);
+        queue.add(root);
+        generatedStates++;
+        Label incumbent = graph.isEnding(start) ? root : null;
+
+        while (!queue.isEmpty()) {
+            if (control != null && control.tick()) {
+                return incumbent != null ? materialize(incumbent) : null;
+            }
+
+            Label label = queue.poll();
+            if (graph.isEnding(label.node)) {
+                StoryPath optimal = materialize(label);
+                if (control != null) {
+                    control.offer(optimal);
+                }
+                return optimal;
+            }
+
+            expandedStates++;
+            int node = label.node;
+            nodeVisitCount[node]++;
+            long[] visited = label.visited.clone();
+            boolean wasOnPath = CgBits.contains(visited, node);
+            CgBits.set(visited, node);
+
+            for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                int next = graph.getDestination(edge);
+                // Same rule as the depth-first search: a node's own self-loop may be taken once
+                if (next < 0 || (next == node ? wasOnPath : CgBits.contains(visited, next))
+                        || !bounds.canReachAcceptedEnding(next)) {
+                    continue;
+                }
+
+                int[] edges = Arrays.copyOf(label.edges, label.edges.length + 1);
+                edges[label.edges.length] = edge;
+                Label child = new Label(next, edges, collect(label.cgBits, next), visited);
+                if (incumbent != null && child.estimate < incumbent.estimate) {
+                    // Can never be taken from the queue before the incumbent
+                    continue;
+                }
+                if (graph.isEnding(next) && (incumbent == null || BEST_FIRST.compare(child, incumbent) < 0)) {
+                    incumbent = child;
+                    if (control != null) {
+                        control.offer(materialize(child));
+                    }
+                }
+                queue.add(child);
+                generatedStates++;
+            }
+        }
+        return null;
+    }
+
+    int getGeneratedStates() {
+        return generatedStates;
+    }
+
+    int getExpandedStates() {
+        return expandedStates;
+    }
+
+    int[] getNodeVisitCount() {
+        return nodeVisitCount;
+    }
+
+    // Bits of collected plus the CGs of node, as a new array.
+    private long[] collect(long[] collected, int node) {
+        long[] result = collected.clone();
+        for (int slot = graph.getCgStart(node); slot < graph.getCgEnd(node); slot++) {
+            CgBits.set(result, graph.getCgAt(slot));
+        }
+        return result;
+    }
+
+    private StoryPath materialize(Label label) {
+        List<String> nodeSequence = new ArrayList<>(label.edges.length + 1);
+        List<Choice> choiceSequence = new ArrayList<>(label.edges.length);
+        nodeSequence.add(graph.getNodeId(graph.getStartIndex()));
+        for (int edge : label.edges) {
+            choiceSequence.add(graph.getChoice(edge));
+            nodeSequence.add(graph.getNodeId(graph.getDestination(edge)));
+        }
+        return new StoryPath(nodeSequence, choiceSequence, graph.getCgIndex(), label.cgBits.clone(),
+                             graph.getEndingType(label.node), true, graph.getScoringModel());
+    }
+
+    // Depth-first discovery order: lexicographic by choice, a prefix before its extensions.
+    private static int compareChoices(int[] a, int[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return Integer.compare(a[i], b[i]);
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+
+    // A partial path: the choices taken from the start, the CGs collected and the
+    // nodes before its last one.
+    private final class Label {
+        final int node;
+        final int[] edges;
+        final long[] cgBits;
+        final long[] visited;
+        // Optimistic final score; exact once node is an ending
+        final int estimate;
+
+        Label(int node, int[] edges, long[] cgBits, long[] visited) {
+            this.node = node;
+            this.edges = edges;
+            this.cgBits = cgBits;
+            this.visited = visited;
+            this.estimate = bounds.upperBound(cgBits, node, edges.length + 1);
+        }
+    }
+}
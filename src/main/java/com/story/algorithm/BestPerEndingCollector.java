@@ -0,0 +1,67 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Keeps the best complete path to each ending node, so one exhaustive search
+// answers the optimal-path query for every ending at once. Only improvements are
+// materialized, and the first path found wins ties, matching a search for that
+// ending alone.
+final class BestPerEndingCollector implements PathCollector {
+    private final CompiledStoryGraph graph;
+    private final StoryPath[] bestPaths;
+    private final int[] bestScores;
+    private final PathStatistics statistics;
+
+    BestPerEndingCollector(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.bestPaths = new StoryPath[graph.getNodeCount()];
+        this.bestScores = new int[graph.getNodeCount()];
+        this.statistics = new PathStatistics(graph);
+    }
+
+    @Override
+    public void collect(WorkingPath path, int endingNode) {
+        int score = path.getScore(endingNode);
+        String endingType = graph.getEndingType(endingNode);
+        if (bestPaths[endingNode] == null || score > bestScores[endingNode]) {
+            bestPaths[endingNode] = path.toCompletePath(endingType);
+            bestScores[endingNode] = score;
+        }
+        statistics.add(path, endingNode);
+    }
+
+    @Override
+    public void append(PathCollector later) {
+        BestPerEndingCollector other = (BestPerEndingCollector) later;
+        for (int node = 0; node < bestPaths.length; node++) {
+            StoryPath candidate = other.bestPaths[node];
+            if (candidate != null && (bestPaths[node] == null || other.bestScores[node] > bestScores[node])) {
+                bestPaths[node] = candidate;
+                bestScores[node] = other.bestScores[node];
+            }
+        }
+        statistics.merge(other.statistics);
+    }
+
+    @Override
+    public PathCollector newEmpty() {
+        return new BestPerEndingCollector(graph);
+    }
+
+    @Override
+    public PathStatistics getStatistics() {
+        return statistics;
+    }
+
+    // Best path per reachable ending id, in ending id order.
+    Map<String, StoryPath> getBestPaths() {
+        Map<String, StoryPath> result = new LinkedHashMap<>();
+        for (int node = 0; node < bestPaths.length; node++) {
+            if (bestPaths[node] != null) {
+                result.put(graph.getNodeId(node), bestPaths[node]);
+            }
+        }
+        return result;
+    }
+}
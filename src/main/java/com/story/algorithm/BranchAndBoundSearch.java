@@ -0,0 +1,178 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Depth-first branch-and-bound for the highest-scoring path.
+// Only descends into a choice when the CGs already collected plus everything
+// still reachable from it could beat the best score found so far. A branch that
+// can at best tie is skipped too, because the earlier path wins ties. A partial
+// path is also dropped when an earlier one reached the same node with a score that
+// stays ahead even if this path still collects the reachable CGs only the earlier
+// one has, and, inside a loop, with no more of the loop's nodes used up: every way
+// to finish it was already open to the earlier path and scores at least as much
+// there. Runs on an explicit frame stack in the same order as a recursive search.
+final class BranchAndBoundSearch {
+    private final CompiledStoryGraph graph;
+    private final ReachabilityBounds bounds;
+    private final FrameStack frames;
+    private final WorkingPath path;
+    private final int[] nodeVisitCount;
+    // Partial paths that reached each node and were not dominated when they did
+    private final DominanceLabels<Label> labels;
+
+    // Every path that improved on the best score, in the order found
+    private final List<StoryPath> improvements;
+    private int bestScore;
+    private int exploredPaths;
+    private int prunedBranches;
+    private int dominatedPaths;
+    // Budgets and incumbent of the running query, or null when unlimited
+    private SearchControl control;
+
+    BranchAndBoundSearch(CompiledStoryGraph graph, ReachabilityBounds bounds) {
+        this.graph = graph;
+        this.bounds = bounds;
+        this.frames = new FrameStack(graph);
+        this.path = frames.getPath();
+        this.nodeVisitCount = new int[graph.getNodeCount()];
+        this.labels = new DominanceLabels<>(graph.getNodeCount(), this::dominates);
+        this.improvements = new ArrayList<>();
+        this.bestScore = Integer.MIN_VALUE;
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    void run() {
+        exploredPaths++;
+        int start = graph.getStartIndex();
+        if (start < 0) {
+            return;
+        }
+
+        enter(start);
+        while (!frames.isEmpty()) {
+            int node = frames.getTopNode();
+
+            if (frames.hasNextChoice() && (control == null || !control.isStopped())) {
+                int edge = frames.nextChoice();
+                int next = graph.getDestination(edge);
+
+                if (next >= 0 && !frames.canStep(node, next)) {
+                    continue;
+                }
+                exploredPaths++;
+                if (next < 0 || bounds.upperBound(path.getCgBits(), next, path.getDepth() + 1) <= bestScore) {
+                    prunedBranches++;
+                    continue;
+                }
+                if (next != node && !graph.isEnding(next) && !addLabel(next)) {
+                    dominatedPaths++;
+                    continue;
+                }
+
+                path.pushChoice(edge);
+                if (!enter(next)) {
+                    path.popChoice();
+                }
+            } else {
+                frames.pop();
+            }
+        }
+    }
+
+    List<StoryPath> getImprovements() {
+        return improvements;
+    }
+
+    int getExploredPaths() {
+        return exploredPaths;
+    }
+
+    int getPrunedBranches() {
+        return prunedBranches;
+    }
+
+    // Partial paths dropped because an earlier one at the same node dominated them.
+    int getDominatedPaths() {
+        return dominatedPaths;
+    }
+
+    int[] getNodeVisitCount() {
+        return nodeVisitCount;
+    }
+
+    // Steps into node. Endings are scored at once; any other node gets a frame.
+    // Returns true if a frame was pushed.
+    private boolean enter(int node) {
+        if (control != null && control.tick()) {
+            return false;
+        }
+        nodeVisitCount[node]++;
+
+        if (graph.isEnding(node)) {
+            if (bounds.isAccepting(node)) {
+                path.pushNode(node);
+                int score = path.getScore(node);
+                if (score > bestScore) {
+                    bestScore = score;
+                    StoryPath improved = path.toCompletePath(graph.getEndingType(node));
+                    improvements.add(improved);
+                    if (control != null) {
+                        control.offer(improved);
+                    }
+                }
+                path.popNode();
+            }
+            return false;
+        }
+
+        frames.push(node);
+        return true;
+    }
+
+    // Records the partial path about to enter next, or returns false when an earlier
+    // partial path at next dominates it. Only called when next is not on the path, so
+    // every earlier path at next has been searched to the end: whatever this one could
+    // still find scores no more than the best path already found, and the earlier path
+    // keeps the tie. Re-entering a node by its own choice is never compared, since the
+    // first entry is still being searched.
+    private boolean addLabel(int next) {
+        long[] inside = DominanceLabels.reachableCollected(path, bounds.getReachableCgs(next));
+        Label label = new Label(inside, graph.cgScore(inside), path.getCgScore() - path.getDepth() * graph.getLengthPenalty(),
+                                frames.usedInComponent(next));
+        return labels.add(next, label);
+    }
+
+    // Every way to finish b is also open to a and scores at least as much after a.
+    // Any ending gives both the same CGs, so b can only catch up by collecting the
+    // reachable CGs a already has and b lacks: a wins if it is still ahead after
+    // that. When a's reachable CGs are a subset of b's, this is a plain comparison
+    // of scores.
+    private boolean dominates(Label a, Label b) {
+        if (a.score < b.score || !DominanceLabels.leavesLoopOpen(a.usedInLoop, b.usedInLoop)) {
+            return false;
+        }
+        int onlyInA = graph.unionCgScore(a.reachableCgs, b.reachableCgs) - b.reachableScore;
+        return a.score >= b.score + onlyInA;
+    }
+
+    // A partial path as seen from the node it is entering: its collected CGs that node
+    // can still reach and their weight, its score so far without the ending and the
+    // loop nodes it has used up.
+    private static final class Label {
+        final long[] reachableCgs;
+        final int reachableScore;
+        final int score;
+        final long[] usedInLoop;
+
+        Label(long[] reachableCgs, int reachableScore, int score, long[] usedInLoop) {
+            this.reachableCgs = reachableCgs;
+            this.reachableScore = reachableScore;
+            this.score = score;
+            this.usedInLoop = usedInLoop;
+        }
+    }
+}
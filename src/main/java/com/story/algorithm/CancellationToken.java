@@ -0,0 +1,15 @@
+package com.story.algorithm;
+
+// Lets another thread ask a running search to stop. Once cancelled, a token
+// stays cancelled, so use a fresh one for each query.
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,501 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Immutable integer view of a Story used by the search engines.
+// Node ids are interned to dense indices and choices are stored in
+// compressed-sparse-row form: the choices of node n are the edges
+// getChoiceStart(n) until getChoiceEnd(n), in the story's choice order.
+public final class CompiledStoryGraph {
+    private final Story story;
+    private final String[] nodeIds;
+    private final Map<String, Integer> nodeIndex;
+    private final int startIndex;
+
+    // CSR adjacency: edges of node n are choiceOffsets[n] .. choiceOffsets[n + 1] - 1
+    private final int[] choiceOffsets;
+    private final int[] destinations;
+    private final int[] choiceIds;
+    private final Choice[] choices;
+
+    // CSR CG lists: CGs of node n are cgOffsets[n] .. cgOffsets[n + 1] - 1,
+    // as indices into the story's CgIndex
+    private final int[] cgOffsets;
+    private final int[] nodeCgs;
+    private final CgIndex cgIndex;
+
+    // Reverse CSR index: nodes with a choice into node n are
+    // predecessors[predecessorOffsets[n] .. predecessorOffsets[n + 1] - 1]
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+
+    private final boolean[] ending;
+    private final String[] endingTypes;
+
+    // The scoring model compiled to numbers: weight per CG index, bonus per node
+    // and penalty per node on a path. uniformCgWeight is the weight every CG shares,
+    // or -1 when the weights differ.
+    private final ScoringModel scoringModel;
+    private final int[] cgWeights;
+    private final int uniformCgWeight;
+    private final int[] endingBonuses;
+    private final int lengthPenalty;
+
+    // Kahn order of the graph the search walks, or null if it has a cycle
+    private final int[] topologicalOrder;
+
+    // Strongly connected components of the same graph, numbered so that choices only
+    // lead to the same or a lower-numbered component. A component is cyclic if it has
+    // more than one node or a self-loop; indexInComponent numbers the nodes of each.
+    private final int[] components;
+    private final int[] componentSizes;
+    private final boolean[] cyclicComponents;
+    private final int[] indexInComponent;
+
+    // Per target ending: nodes from which the search can still reach it, built on first use
+    private final Map<Integer, boolean[]> reachingTarget = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private CompiledStoryGraph(Story story, ScoringModel scoringModel) {
+        this.story = story;
+        this.scoringModel = scoringModel;
+        this.lengthPenalty = scoringModel.getLengthPenalty();
+
+        Map<String, StoryNode> storyNodes = story.getNodes();
+        this.nodeIds = storyNodes.keySet().stream().sorted().toArray(String[]::new);
+        int nodeCount = nodeIds.length;
+
+        this.nodeIndex = new HashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIndex.put(nodeIds[i], i);
+        }
+        this.startIndex = getNodeIndex(story.getStartNodeId());
+
+        this.cgIndex = story.getCgIndex();
+        this.cgWeights = new int[cgIndex.size()];
+        int sharedWeight = cgWeights.length > 0 ? scoringModel.getCgWeight(cgIndex.getCgId(0)) : 0;
+        for (int cg = 0; cg < cgWeights.length; cg++) {
+            cgWeights[cg] = scoringModel.getCgWeight(cgIndex.getCgId(cg));
+            if (cgWeights[cg] != sharedWeight) {
+                sharedWeight = -1;
+            }
+        }
+        this.uniformCgWeight = sharedWeight;
+        List<Choice> edgeList = new ArrayList<>();
+        List<Integer> cgSlots = new ArrayList<>();
+
+        this.choiceOffsets = new int[nodeCount + 1];
+        this.cgOffsets = new int[nodeCount + 1];
+        this.ending = new boolean[nodeCount];
+        this.endingTypes = new String[nodeCount];
+        this.endingBonuses = new int[nodeCount];
+
+        for (int i = 0; i < nodeCount; i++) {
+            StoryNode node = storyNodes.get(nodeIds[i]);
+            choiceOffsets[i] = edgeList.size();
+            edgeList.addAll(node.getChoices());
+
+            cgOffsets[i] = cgSlots.size();
+            for (String cg : node.getCgs()) {
+                cgSlots.add(cgIndex.indexOf(cg));
+            }
+
+            ending[i] = node.isEnding();
+            endingTypes[i] = node.getEndingType();
+            if (node.isEnding() && node.getEndingType() != null) {
+                endingBonuses[i] = scoringModel.getEndingBonus(node.getEndingType());
+            }
+        }
+        choiceOffsets[nodeCount] = edgeList.size();
+        cgOffsets[nodeCount] = cgSlots.size();
+
+        int edgeCount = edgeList.size();
+        this.choices = edgeList.toArray(new Choice[0]);
+        this.destinations = new int[edgeCount];
+        this.choiceIds = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            destinations[e] = getNodeIndex(choices[e].getDestination());
+            choiceIds[e] = choices[e].getId();
+        }
+
+        this.nodeCgs = cgSlots.stream().mapToInt(Integer::intValue).toArray();
+
+        // Counting sort of the edges by destination gives the reverse index
+        this.predecessorOffsets = new int[nodeCount + 1];
+        for (int destination : destinations) {
+            if (destination >= 0) {
+                predecessorOffsets[destination + 1]++;
+            }
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+        this.predecessors = new int[predecessorOffsets[nodeCount]];
+        int[] fill = Arrays.copyOf(predecessorOffsets, nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            for (int e = choiceOffsets[node]; e < choiceOffsets[node + 1]; e++) {
+                if (destinations[e] >= 0) {
+                    predecessors[fill[destinations[e]]++] = node;
+                }
+            }
+        }
+
+        this.topologicalOrder = computeTopologicalOrder();
+
+        this.components = computeComponents();
+        int componentCount = 0;
+        for (int component : components) {
+            componentCount = Math.max(componentCount, component + 1);
+        }
+        this.componentSizes = new int[componentCount];
+        this.cyclicComponents = new boolean[componentCount];
+        this.indexInComponent = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int component = components[node];
+            indexInComponent[node] = componentSizes[component]++;
+            if (componentSizes[component] > 1) {
+                cyclicComponents[component] = true;
+            }
+            if (!ending[node]) {
+                for (int e = choiceOffsets[node]; e < choiceOffsets[node + 1]; e++) {
+                    if (destinations[e] == node) {
+                        cyclicComponents[component] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    // The search never follows choices out of an ending, so only choices of
+    // non-ending nodes count as edges here. A self-loop is a cycle.
+    private int[] computeTopologicalOrder() {
+        int nodeCount = nodeIds.length;
+        int[] inDegree = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (ending[node]) {
+                continue;
+            }
+            for (int e = choiceOffsets[node]; e < choiceOffsets[node + 1]; e++) {
+                if (destinations[e] >= 0) {
+                    inDegree[destinations[e]]++;
+                }
+            }
+        }
+
+        int[] order = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (inDegree[node] == 0) {
+                order[tail++] = node;
+            }
+        }
+        while (head < tail) {
+            int node = order[head++];
+            if (ending[node]) {
+                continue;
+            }
+            for (int e = choiceOffsets[node]; e < choiceOffsets[node + 1]; e++) {
+                int destination = destinations[e];
+                if (destination >= 0 && --inDegree[destination] == 0) {
+                    order[tail++] = destination;
+                }
+            }
+        }
+        return tail == nodeCount ? order : null;
+    }
+
+    // Tarjan's algorithm on an explicit stack, over the same edges as the topological
+    // order. Components are numbered as they are completed, which is reverse
+    // topological order of the condensation.
+    private int[] computeComponents() {
+        int nodeCount = nodeIds.length;
+        int[] component = new int[nodeCount];
+        int[] index = new int[nodeCount];
+        int[] low = new int[nodeCount];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        // Call stack: node and next choice to follow
+        int[] callNodes = new int[nodeCount];
+        int[] callEdges = new int[nodeCount];
+        int depth = 0;
+        int counter = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callNodes[depth] = root;
+            callEdges[depth] = choiceOffsets[root];
+            depth++;
+
+            while (depth > 0) {
+                int node = callNodes[depth - 1];
+                if (!ending[node] && callEdges[depth - 1] < choiceOffsets[node + 1]) {
+                    int next = destinations[callEdges[depth - 1]++];
+                    if (next < 0) {
+                        continue;
+                    }
+                    if (index[next] < 0) {
+                        index[next] = low[next] = counter++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        callNodes[depth] = next;
+                        callEdges[depth] = choiceOffsets[next];
+                        depth++;
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], index[next]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = componentCount;
+                    } while (member != node);
+                    componentCount++;
+                }
+                if (depth > 0) {
+                    int parent = callNodes[depth - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+        return component;
+    }
+
+    // Builds the integer graph for a story. The result is immutable and can be
+    // shared by any number of path finders.
+    public static CompiledStoryGraph compile(Story story) {
+        return compile(story, story.getScoringModel());
+    }
+
+    // Same, but scores paths with the given model instead of the story's own.
+    public static CompiledStoryGraph compile(Story story, ScoringModel scoringModel) {
+        return new CompiledStoryGraph(story, scoringModel);
+    }
+
+    public Story getStory() {
+        return story;
+    }
+
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+
+    public int getEdgeCount() {
+        return destinations.length;
+    }
+
+    // Returns the dense index of a node id, or -1 if the story has no such node.
+    public int getNodeIndex(String nodeId) {
+        Integer index = nodeIndex.get(nodeId);
+        return index != null ? index : -1;
+    }
+
+    public String getNodeId(int node) {
+        return nodeIds[node];
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public int getChoiceStart(int node) {
+        return choiceOffsets[node];
+    }
+
+    public int getChoiceEnd(int node) {
+        return choiceOffsets[node + 1];
+    }
+
+    // Returns the node index a choice leads to, or -1 if its destination does not exist.
+    public int getDestination(int edge) {
+        return destinations[edge];
+    }
+
+    public int getChoiceId(int edge) {
+        return choiceIds[edge];
+    }
+
+    public Choice getChoice(int edge) {
+        return choices[edge];
+    }
+
+    public int getPredecessorStart(int node) {
+        return predecessorOffsets[node];
+    }
+
+    public int getPredecessorEnd(int node) {
+        return predecessorOffsets[node + 1];
+    }
+
+    // Returns the source node of the i-th reverse edge. A node with several
+    // choices into the same destination appears once per choice.
+    public int getPredecessor(int i) {
+        return predecessors[i];
+    }
+
+    public int getCgStart(int node) {
+        return cgOffsets[node];
+    }
+
+    public int getCgEnd(int node) {
+        return cgOffsets[node + 1];
+    }
+
+    public int getCgAt(int slot) {
+        return nodeCgs[slot];
+    }
+
+    public int getCgCount() {
+        return cgIndex.size();
+    }
+
+    public CgIndex getCgIndex() {
+        return cgIndex;
+    }
+
+    public boolean isEnding(int node) {
+        return ending[node];
+    }
+
+    public String getEndingType(int node) {
+        return endingTypes[node];
+    }
+
+    // Score bonus for finishing at this node, or 0 if it is not an ending.
+    public int getEndingBonus(int node) {
+        return endingBonuses[node];
+    }
+
+    public ScoringModel getScoringModel() {
+        return scoringModel;
+    }
+
+    public int getCgWeight(int cg) {
+        return cgWeights[cg];
+    }
+
+    // Points taken off for every node on a path.
+    public int getLengthPenalty() {
+        return lengthPenalty;
+    }
+
+    // Total weight of the CGs in bits.
+    public int cgScore(long[] bits) {
+        if (uniformCgWeight >= 0) {
+            return CgBits.cardinality(bits) * uniformCgWeight;
+        }
+        int score = 0;
+        for (int cg = CgBits.nextSetBit(bits, 0); cg >= 0; cg = CgBits.nextSetBit(bits, cg + 1)) {
+            score += cgWeights[cg];
+        }
+        return score;
+    }
+
+    // Total weight of the CGs in a | b, without building the union.
+    public int unionCgScore(long[] a, long[] b) {
+        if (uniformCgWeight >= 0) {
+            return CgBits.unionCardinality(a, b) * uniformCgWeight;
+        }
+        int score = 0;
+        int words = Math.max(a.length, b.length);
+        for (int w = 0; w < words; w++) {
+            long word = (w < a.length ? a[w] : 0L) | (w < b.length ? b[w] : 0L);
+            while (word != 0) {
+                score += cgWeights[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+            }
+        }
+        return score;
+    }
+
+    // True if no sequence of choices can lead back to a node already on the path.
+    public boolean isAcyclic() {
+        return topologicalOrder != null;
+    }
+
+    // Strongly connected component of node. Choices only lead to the same component
+    // or to one with a lower number.
+    public int getComponent(int node) {
+        return components[node];
+    }
+
+    public int getComponentCount() {
+        return componentSizes.length;
+    }
+
+    public int getComponentSize(int component) {
+        return componentSizes[component];
+    }
+
+    // True if a path can come back to a node of this component.
+    public boolean isCyclicComponent(int component) {
+        return cyclicComponents[component];
+    }
+
+    // Position of node among the nodes of its component, from 0.
+    public int getIndexInComponent(int node) {
+        return indexInComponent[node];
+    }
+
+    // Number of nodes in the largest cyclic component, or 0 if the graph is acyclic.
+    public int getLargestCyclicComponentSize() {
+        int largest = 0;
+        for (int component = 0; component < componentSizes.length; component++) {
+            if (cyclicComponents[component]) {
+                largest = Math.max(largest, componentSizes[component]);
+            }
+        }
+        return largest;
+    }
+
+    // Node indices in topological order, or null if the graph has a cycle.
+    public int[] getTopologicalOrder() {
+        return topologicalOrder != null ? topologicalOrder.clone() : null;
+    }
+
+    // Nodes from which some sequence of choices leads to the target ending, found by
+    // a reverse breadth-first search over the predecessor index. Like the search,
+    // it never passes through another ending. Callers must not modify the array.
+    boolean[] getNodesReaching(int target) {
+        return reachingTarget.computeIfAbsent(target, this::computeNodesReaching);
+    }
+
+    private boolean[] computeNodesReaching(int target) {
+        boolean[] reaches = new boolean[nodeIds.length];
+        int[] queue = new int[nodeIds.length];
+        int head = 0;
+        int tail = 0;
+        reaches[target] = true;
+        queue[tail++] = target;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+                int predecessor = predecessors[i];
+                if (!reaches[predecessor] && !ending[predecessor]) {
+                    reaches[predecessor] = true;
+                    queue[tail++] = predecessor;
+                }
+            }
+        }
+        return reaches;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompiledStoryGraph{nodes=%d, choices=%d, cgs=%d}",
+                           nodeIds.length, destinations.length, cgIndex.size());
+    }
+}
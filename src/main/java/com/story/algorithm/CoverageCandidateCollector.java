@@ -0,0 +1,57 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Keeps one complete path per distinct set of collected CGs: the shortest, and the
+// first found among equally short ones. These are the candidate playthroughs of a
+// CoveragePlanner; every other path collects exactly the CGs of a kept one.
+final class CoverageCandidateCollector implements PathCollector {
+    private final CompiledStoryGraph graph;
+    // CG set of each kept path, in the order the sets were first found
+    private final Map<BitSet, StoryPath> shortestPaths;
+    private final PathStatistics statistics;
+
+    CoverageCandidateCollector(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.shortestPaths = new LinkedHashMap<>();
+        this.statistics = new PathStatistics(graph);
+    }
+
+    @Override
+    public void collect(WorkingPath path, int endingNode) {
+        BitSet cgs = BitSet.valueOf(path.getCgBits());
+        StoryPath kept = shortestPaths.get(cgs);
+        if (kept == null || path.getDepth() < kept.getPathLength()) {
+            shortestPaths.put(cgs, path.toCompletePath(graph.getEndingType(endingNode)));
+        }
+        statistics.add(path, endingNode);
+    }
+
+    @Override
+    public void append(PathCollector later) {
+        CoverageCandidateCollector other = (CoverageCandidateCollector) later;
+        for (Map.Entry<BitSet, StoryPath> entry : other.shortestPaths.entrySet()) {
+            StoryPath kept = shortestPaths.get(entry.getKey());
+            if (kept == null || entry.getValue().getPathLength() < kept.getPathLength()) {
+                shortestPaths.put(entry.getKey(), entry.getValue());
+            }
+        }
+        statistics.merge(other.statistics);
+    }
+
+    @Override
+    public PathCollector newEmpty() {
+        return new CoverageCandidateCollector(graph);
+    }
+
+    @Override
+    public PathStatistics getStatistics() {
+        return statistics;
+    }
+
+    // The kept paths by CG set, in the order the sets were first found.
+    Map<BitSet, StoryPath> getShortestPaths() {
+        return shortestPaths;
+    }
+}
@@ -0,0 +1,66 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// A set of complete playthroughs that together unlock every CG some playthrough
+// can unlock, as found by CoveragePlanner; see getUncoveredCgIds for when that is
+// not proven. The lower bound is the fewest playthroughs any such set can have, as
+// far as the planner could prove; when the plan has that many paths it is minimal.
+public final class CoveragePlan {
+    private final List<StoryPath> paths;
+    private final Set<String> coveredCgIds;
+    private final Set<String> uncoveredCgIds;
+    private final boolean uncoveredProvenUnreachable;
+    private final int lowerBound;
+
+    CoveragePlan(List<StoryPath> paths, Set<String> coveredCgIds, Set<String> uncoveredCgIds,
+                 boolean uncoveredProvenUnreachable, int lowerBound) {
+        this.paths = Collections.unmodifiableList(new ArrayList<>(paths));
+        this.coveredCgIds = Collections.unmodifiableSet(new TreeSet<>(coveredCgIds));
+        this.uncoveredCgIds = Collections.unmodifiableSet(new TreeSet<>(uncoveredCgIds));
+        this.uncoveredProvenUnreachable = uncoveredProvenUnreachable;
+        this.lowerBound = lowerBound;
+    }
+
+    // The playthroughs, in the order they were picked: each adds the most CGs the
+    // earlier ones are missing.
+    public List<StoryPath> getPaths() {
+        return paths;
+    }
+
+    public int getPathCount() {
+        return paths.size();
+    }
+
+    // CGs the plan unlocks, in id order.
+    public Set<String> getCoveredCgIds() {
+        return coveredCgIds;
+    }
+
+    // CGs of the story the plan does not unlock, in id order. No complete path
+    // unlocks them when isUncoveredProvenUnreachable is true; otherwise the planner
+    // settled for an approximate search and some might still be reachable.
+    public Set<String> getUncoveredCgIds() {
+        return uncoveredCgIds;
+    }
+
+    public boolean isUncoveredProvenUnreachable() {
+        return uncoveredProvenUnreachable;
+    }
+
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    public boolean isProvenMinimal() {
+        return paths.size() == lowerBound;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CoveragePlan{paths=%d, lowerBound=%d, provenMinimal=%b, covered=%d, uncovered=%d, unreachable=%b}",
+                             paths.size(), lowerBound, isProvenMinimal(), coveredCgIds.size(), uncoveredCgIds.size(),
+                             uncoveredProvenUnreachable);
+    }
+}
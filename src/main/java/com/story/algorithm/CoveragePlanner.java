@@ -0,0 +1,411 @@
+package com.story.algorithm;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import com.story.model.*;
+
+// Plans the fewest complete playthroughs that together unlock every CG, a set
+// cover over the CG sets of the story's paths.
+// - When an exhaustive search is affordable (the same limit AUTO uses), every
+//   distinct CG set a path collects becomes a candidate, with its shortest path.
+//   Candidates contained in a larger one are dropped, and an exact branch-and-bound
+//   over the rest, started from the greedy cover, finds a minimum cover.
+// - Otherwise the cover is built greedily with the path finder: each round finds
+//   the path that adds the most CGs still missing, by scoring only those CGs.
+//   Greedy covers are at most H(d) times the minimum, d being the most CGs one path
+//   collects, which gives the reported lower bound. A round that cannot be solved
+//   exactly within its step limit takes the beam's path instead; the bound is then
+//   not proven, and unless the last round was exact, CGs left uncovered might
+//   still be reachable.
+// Either way the plan tells whether its uncovered CGs are proven unreachable.
+// Candidate enumeration, the containment check and the greedy gains run in
+// parallel; CG sets are bit sets, so covering is word-wise and-not and or.
+public final class CoveragePlanner {
+    // Exact cover search steps before settling for the best cover found so far
+    private static final long EXACT_COVER_STEP_LIMIT = 1_000_000L;
+    // More distinct CG sets than this are covered greedily, without the exact search
+    private static final int EXACT_CANDIDATE_LIMIT = 20_000;
+    // Search steps of one greedy round before it settles for the beam's answer
+    private static final long ROUND_STEP_LIMIT = 1_000_000L;
+
+    private final Story story;
+    private final CompiledStoryGraph graph;
+    private final int words;
+    private int parallelism;
+
+    // Counters of the last plan
+    private int candidateCount;
+    private long coverSteps;
+
+    // State of the exact cover search
+    private List<long[]> candidateSets;
+    private int[][] candidatesByCg;
+    private int universeSize;
+    private int largestSet;
+    private int[] bestCover;
+    private boolean stopped;
+    // Workers of the running plan, shared by all its parallel steps; null when sequential
+    private ForkJoinPool pool;
+
+    public CoveragePlanner(Story story) {
+        this(CompiledStoryGraph.compile(story));
+    }
+
+    public CoveragePlanner(CompiledStoryGraph graph) {
+        this.story = graph.getStory();
+        this.graph = graph;
+        this.words = graph.getCgIndex().wordCount();
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    // Number of worker threads for enumerating and comparing candidate paths.
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Distinct CG sets the last plan chose from, before dropping contained ones; 0
+    // when it was built round by round with the path finder.
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    // Nodes of the exact cover search in the last plan.
+    public long getCoverSteps() {
+        return coverSteps;
+    }
+
+    public CoveragePlan plan() {
+        candidateCount = 0;
+        coverSteps = 0;
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            BigInteger steps = PathCounter.count(graph, -1).getSearchSteps();
+            if (steps.compareTo(BigInteger.valueOf(StoryPathFinder.EXHAUSTIVE_STEP_LIMIT)) <= 0) {
+                return planFromCandidates();
+            }
+            return planByRounds();
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    // Exact cover over the CG sets of every path.
+    private CoveragePlan planFromCandidates() {
+        Map<BitSet, StoryPath> shortestPaths = collectCandidates().getShortestPaths();
+        candidateCount = shortestPaths.size();
+
+        // Largest sets first, in discovery order among equally large ones
+        List<StoryPath> paths = new ArrayList<>(shortestPaths.values());
+        List<long[]> sets = new ArrayList<>(paths.size());
+        for (BitSet cgs : shortestPaths.keySet()) {
+            sets.add(Arrays.copyOf(cgs.toLongArray(), words));
+        }
+        Integer[] order = new Integer[paths.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> -CgBits.cardinality(sets.get(i))));
+
+        long[] universe = new long[words];
+        List<StoryPath> sortedPaths = new ArrayList<>(order.length);
+        List<long[]> sortedSets = new ArrayList<>(order.length);
+        for (int i : order) {
+            sortedPaths.add(paths.get(i));
+            sortedSets.add(sets.get(i));
+            universe = CgBits.union(universe, sets.get(i));
+        }
+        universeSize = CgBits.cardinality(universe);
+
+        if (sortedSets.size() > EXACT_CANDIDATE_LIMIT) {
+            int[] cover = greedyCover(sortedSets);
+            int largest = sortedSets.isEmpty() ? 0 : CgBits.cardinality(sortedSets.get(0));
+            return buildPlan(pick(sortedPaths, cover), pick(sortedSets, cover), universe, true,
+                             greedyLowerBound(cover.length, largest, universeSize));
+        }
+
+        // Only sets no other set contains can be needed in a minimum cover
+        boolean[] contained = new boolean[sortedSets.size()];
+        runParallel(sortedSets.size(), i -> contained[i] = isContained(sortedSets, i));
+        List<StoryPath> candidatePaths = new ArrayList<>();
+        candidateSets = new ArrayList<>();
+        for (int i = 0; i < sortedSets.size(); i++) {
+            if (!contained[i]) {
+                candidatePaths.add(sortedPaths.get(i));
+                candidateSets.add(sortedSets.get(i));
+            }
+        }
+
+        int[] cover = exactCover();
+        int lowerBound = stopped ? greedyLowerBound(greedyCover(candidateSets).length, largestSet, universeSize)
+                                 : cover.length;
+        CoveragePlan plan = buildPlan(pick(candidatePaths, cover), pick(candidateSets, cover), universe, true, lowerBound);
+        candidateSets = null;
+        candidatesByCg = null;
+        return plan;
+    }
+
+    private CoverageCandidateCollector collectCandidates() {
+        CoverageCandidateCollector collector = new CoverageCandidateCollector(graph);
+        if (pool != null) {
+            return (CoverageCandidateCollector) new ParallelPathSearch(graph, -1, parallelism, collector).run(pool).getCollector();
+        }
+        BacktrackingSearch search = new BacktrackingSearch(graph, -1, collector);
+        search.run(graph.getStartIndex());
+        return (CoverageCandidateCollector) search.getCollector();
+    }
+
+    // True when a larger candidate contains candidate i. Sets are sorted by size, so
+    // only the ones before i can.
+    private static boolean isContained(List<long[]> sets, int i) {
+        long[] set = sets.get(i);
+        int size = CgBits.cardinality(set);
+        for (int j = 0; j < i; j++) {
+            long[] other = sets.get(j);
+            if (CgBits.cardinality(other) > size && CgBits.containsAll(other, set)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Minimum cover of the candidates, as candidate indices, or the best found within
+    // EXACT_COVER_STEP_LIMIT steps. Branches on the uncovered CG with the fewest
+    // candidates and prunes when even the largest candidate for every remaining pick
+    // would not beat the best cover.
+    private int[] exactCover() {
+        int cgCount = graph.getCgCount();
+        List<List<Integer>> byCg = new ArrayList<>(cgCount);
+        for (int cg = 0; cg < cgCount; cg++) {
+            byCg.add(new ArrayList<>());
+        }
+        for (int c = 0; c < candidateSets.size(); c++) {
+            long[] set = candidateSets.get(c);
+            for (int cg = CgBits.nextSetBit(set, 0); cg >= 0; cg = CgBits.nextSetBit(set, cg + 1)) {
+                byCg.get(cg).add(c);
+            }
+        }
+        candidatesByCg = new int[cgCount][];
+        for (int cg = 0; cg < cgCount; cg++) {
+            candidatesByCg[cg] = byCg.get(cg).stream().mapToInt(Integer::intValue).toArray();
+        }
+        largestSet = candidateSets.isEmpty() ? 0 : CgBits.cardinality(candidateSets.get(0));
+
+        bestCover = greedyCover(candidateSets);
+        stopped = false;
+        searchCover(new long[words], 0, new int[bestCover.length], 0);
+        return bestCover;
+    }
+
+    private void searchCover(long[] covered, int coveredCount, int[] chosen, int depth) {
+        if (coverSteps++ >= EXACT_COVER_STEP_LIMIT) {
+            stopped = true;
+            return;
+        }
+        if (coveredCount == universeSize) {
+            if (depth < bestCover.length) {
+                bestCover = Arrays.copyOf(chosen, depth);
+            }
+            return;
+        }
+        int remaining = universeSize - coveredCount;
+        if (depth + (remaining + largestSet - 1) / largestSet >= bestCover.length) {
+            return;
+        }
+
+        // The uncovered CG with the fewest candidates; one of them must be picked
+        int branchCg = -1;
+        for (int cg = 0; cg < candidatesByCg.length; cg++) {
+            if (candidatesByCg[cg].length > 0 && !CgBits.contains(covered, cg)
+                && (branchCg < 0 || candidatesByCg[cg].length < candidatesByCg[branchCg].length)) {
+                branchCg = cg;
+            }
+        }
+
+        // Candidates adding the most first
+        int[] options = candidatesByCg[branchCg];
+        int[] gains = new int[options.length];
+        Integer[] order = new Integer[options.length];
+        for (int i = 0; i < options.length; i++) {
+            gains[i] = CgBits.andNotCardinality(candidateSets.get(options[i]), covered);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> -gains[i]));
+
+        for (int i : order) {
+            if (stopped) {
+                return;
+            }
+            chosen[depth] = options[i];
+            searchCover(CgBits.union(covered, candidateSets.get(options[i])), coveredCount + gains[i], chosen, depth + 1);
+        }
+    }
+
+    // Greedy cover as set indices: repeatedly the set adding the most uncovered CGs,
+    // the first one among equals. The gains of each round are computed in parallel.
+    private int[] greedyCover(List<long[]> sets) {
+        long[] covered = new long[words];
+        int[] gains = new int[sets.size()];
+        List<Integer> cover = new ArrayList<>();
+        while (true) {
+            long[] current = covered;
+            runParallel(sets.size(), i -> gains[i] = CgBits.andNotCardinality(sets.get(i), current));
+            int best = -1;
+            for (int i = 0; i < gains.length; i++) {
+                if (gains[i] > 0 && (best < 0 || gains[i] > gains[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            cover.add(best);
+            covered = CgBits.union(covered, sets.get(best));
+        }
+        return cover.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Runs body for 0..count-1 on the plan's pool of parallelism threads.
+    private void runParallel(int count, IntConsumer body) {
+        if (pool == null || count < 2) {
+            IntStream.range(0, count).forEach(body);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(body)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while planning CG coverage", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("CG coverage planning failed", e.getCause());
+        }
+    }
+
+    // Greedy cover built with the path finder, for stories too large to enumerate.
+    // Each round scores only the CGs still missing, so the optimal path adds the most
+    // of them; the length penalty only breaks ties, since one CG outweighs any path.
+    private CoveragePlan planByRounds() {
+        long[] covered = new long[words];
+        List<StoryPath> paths = new ArrayList<>();
+        List<long[]> sets = new ArrayList<>();
+        int firstGain = 0;
+        boolean proven = true;
+        // Whether the round that found nothing new proved that no path collects more
+        boolean exhausted;
+        int missingWeight = 2 * graph.getNodeCount() + 1;
+
+        while (true) {
+            Map<String, Integer> weights = new HashMap<>();
+            for (String cgId : story.getAllCgIds()) {
+                if (!CgBits.contains(covered, graph.getCgIndex().indexOf(cgId))) {
+                    weights.put(cgId, missingWeight);
+                }
+            }
+            CompiledStoryGraph missingCgs = CompiledStoryGraph.compile(story, new WeightedScoringModel(0, weights, 0,
+                                                                                                   Collections.emptyMap(), 1));
+            SearchResult result = findBestPath(missingCgs, SearchEngine.AUTO, ROUND_STEP_LIMIT);
+            if (!result.isProvenOptimal() && gain(result, covered) == 0) {
+                // An exact engine ran out of steps before finding anything new
+                result = findBestPath(missingCgs, SearchEngine.BEAM, 0);
+            }
+            proven &= result.isProvenOptimal();
+
+            StoryPath path = result.getPath();
+            int gain = gain(result, covered);
+            if (gain == 0) {
+                exhausted = result.isProvenOptimal();
+                break;
+            }
+            if (paths.isEmpty()) {
+                firstGain = gain;
+            }
+            paths.add(new StoryPath(path.getNodeSequence(), path.getChoiceSequence(), path.getCgIndex(),
+                                    path.getCgBits(), path.getEndingType(), true, graph.getScoringModel()));
+            sets.add(path.getCgBits());
+            covered = CgBits.union(covered, path.getCgBits());
+        }
+
+        // Without a proven best path per round only a non-empty cover is certain
+        int lowerBound = proven ? greedyLowerBound(paths.size(), firstGain, CgBits.cardinality(covered))
+                                : Math.min(paths.size(), 1);
+        return buildPlan(paths, sets, covered, exhausted, lowerBound);
+    }
+
+    private static SearchResult findBestPath(CompiledStoryGraph scoredGraph, SearchEngine engine, long nodeBudget) {
+        StoryPathFinder finder = new StoryPathFinder(scoredGraph);
+        finder.setVerbose(false);
+        finder.setEngine(engine);
+        finder.setNodeBudget(nodeBudget);
+        return finder.findOptimalPathWithinBudget(null);
+    }
+
+    // CGs the result's path collects that are not covered yet.
+    private static int gain(SearchResult result, long[] covered) {
+        return result.getPath() != null ? CgBits.andNotCardinality(result.getPath().getCgBits(), covered) : 0;
+    }
+
+    // Fewest sets any cover of universe CGs needs, given a greedy cover of greedySize
+    // sets of at most largest CGs each: greedy is within H(largest) of the minimum,
+    // and every set adds at most largest CGs.
+    private static int greedyLowerBound(int greedySize, int largest, int universe) {
+        if (greedySize == 0) {
+            return 0;
+        }
+        double harmonic = 0.0;
+        for (int i = 1; i <= largest; i++) {
+            harmonic += 1.0 / i;
+        }
+        int byRatio = (int) Math.ceil(greedySize / harmonic - 1e-9);
+        int bySize = (universe + largest - 1) / largest;
+        return Math.max(1, Math.max(byRatio, bySize));
+    }
+
+    // The plan with its paths ordered like a greedy pick, each adding the most CGs
+    // the earlier ones miss.
+    private CoveragePlan buildPlan(List<StoryPath> paths, List<long[]> sets, long[] covered,
+                                   boolean uncoveredProvenUnreachable, int lowerBound) {
+        List<StoryPath> ordered = new ArrayList<>(paths.size());
+        long[] seen = new long[words];
+        boolean[] used = new boolean[paths.size()];
+        for (int round = 0; round < paths.size(); round++) {
+            int best = -1;
+            int bestGain = -1;
+            for (int i = 0; i < paths.size(); i++) {
+                int gain = used[i] ? -1 : CgBits.andNotCardinality(sets.get(i), seen);
+                if (gain > bestGain) {
+                    best = i;
+                    bestGain = gain;
+                }
+            }
+            used[best] = true;
+            ordered.add(paths.get(best));
+            seen = CgBits.union(seen, sets.get(best));
+        }
+
+        Set<String> coveredIds = graph.getCgIndex().toSet(covered);
+        Set<String> uncovered = new TreeSet<>(story.getAllCgIds());
+        uncovered.removeAll(coveredIds);
+        return new CoveragePlan(ordered, coveredIds, uncovered, uncoveredProvenUnreachable, lowerBound);
+    }
+
+    private static <T> List<T> pick(List<T> items, int[] indices) {
+        List<T> picked = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            picked.add(items.get(i));
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,373 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Exact optimizer using memoized dynamic programming over the DAG of strongly
+// connected components. Outside a cycle every path is simple, so the best way to
+// finish from a node depends only on the node and on which CGs were already
+// collected. Only CGs that occur on more than one node can be collected twice, so
+// the state keeps just those, restricted to the ones still reachable from the
+// node. When no CG repeats this is a single best completion per node.
+// A path that leaves a component can never come back to it, so inside a cyclic
+// component the state also holds the nodes of that component already on the
+// path. Only there does the cost grow with the number of simple paths, which
+// keeps stories with a few small loops nearly as cheap as acyclic ones.
+final class DagPathOptimizer {
+    private static final Completion NONE = new Completion(0, -1, -1, null);
+    private static final long[] NO_CGS = new long[0];
+    private static final long[] NO_NODES = new long[0];
+
+    private final CompiledStoryGraph graph;
+    private final ReachabilityBounds bounds;
+    // Per node: total weight of the CGs that occur only on this node, and the CGs
+    // shared with other nodes
+    private final int[] uniqueCgWeight;
+    private final long[][] sharedCgs;
+
+    private final Completion[] emptyStateMemo;
+    private final List<Map<StateKey, Completion>> memo;
+    private final int[] stateCount;
+    private Frame[] frames;
+    private int depth;
+    private int statesEvaluated;
+    // Budgets of the running query, or null when unlimited
+    private SearchControl control;
+
+    DagPathOptimizer(CompiledStoryGraph graph, ReachabilityBounds bounds) {
+        this.graph = graph;
+        this.bounds = bounds;
+
+        int nodeCount = graph.getNodeCount();
+        int[] occurrences = new int[graph.getCgCount()];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int cg : distinctCgs(node)) {
+                occurrences[cg]++;
+            }
+        }
+
+        this.uniqueCgWeight = new int[nodeCount];
+        this.sharedCgs = new long[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            long[] shared = NO_CGS;
+            for (int cg : distinctCgs(node)) {
+                if (occurrences[cg] == 1) {
+                    uniqueCgWeight[node] += graph.getCgWeight(cg);
+                } else {
+                    if (shared == NO_CGS) {
+                        shared = new long[graph.getCgIndex().wordCount()];
+                    }
+                    CgBits.set(shared, cg);
+                }
+            }
+            sharedCgs[node] = shared;
+        }
+
+        this.emptyStateMemo = new Completion[nodeCount];
+        this.memo = new ArrayList<>(Collections.nCopies(nodeCount, null));
+        this.stateCount = new int[nodeCount];
+        this.frames = new Frame[Math.max(16, nodeCount + 1)];
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    // Returns the best path from the start node, or null if no accepted ending is reachable.
+    // The memo only holds a usable answer once it is complete, so a search stopped by
+    // its budget also returns null.
+    StoryPath findOptimalPath() {
+        int start = graph.getStartIndex();
+        if (start < 0) {
+            return null;
+        }
+        Completion best = solve(start, NO_CGS, NO_NODES);
+        if (best == NONE || (control != null && control.isStopped())) {
+            return null;
+        }
+        StoryPath path = materialize(best);
+        if (control != null) {
+            control.offer(path);
+        }
+        return path;
+    }
+
+    int getStatesEvaluated() {
+        return statesEvaluated;
+    }
+
+    // Number of distinct (node, state) pairs evaluated at each node.
+    int[] getStateCounts() {
+        return stateCount.clone();
+    }
+
+    // Best completion from node given the shared CGs already collected and the nodes
+    // of its component already on the path (as bits over getIndexInComponent).
+    // Ties keep the earliest choice, which matches the order backtracking finds paths in.
+    // The recursion over successors runs on an explicit frame stack, so the depth of
+    // the story is only limited by the heap.
+    private Completion solve(int node, long[] collectedShared, long[] visited) {
+        int baseDepth = depth;
+        Completion result = begin(node, collectedShared, visited);
+
+        while (depth > baseDepth) {
+            Frame frame = frames[depth - 1];
+            if (result != null) {
+                // A successor pushed by this frame has just been solved
+                frame.consider(result, frame.pendingEdge);
+                result = null;
+            }
+
+            boolean descended = false;
+            while (frame.nextEdge < graph.getChoiceEnd(frame.node)) {
+                int edge = frame.nextEdge++;
+                int next = graph.getDestination(edge);
+                if (next < 0) {
+                    continue;
+                }
+                long[] nextVisited = NO_NODES;
+                if (frame.nextVisited != NO_NODES && graph.getComponent(next) == graph.getComponent(frame.node)) {
+                    // Same rule as the backtracking search: a node's own self-loop may be
+                    // taken once, any other node only if it is not on the path yet
+                    if (next == frame.node ? frame.revisit
+                                           : CgBits.contains(frame.visited, graph.getIndexInComponent(next))) {
+                        continue;
+                    }
+                    nextVisited = frame.nextVisited;
+                }
+                Completion child = begin(next, frame.nextCollected, nextVisited);
+                if (child == null) {
+                    frame.pendingEdge = edge;
+                    descended = true;
+                    break;
+                }
+                frame.consider(child, edge);
+            }
+            if (descended) {
+                continue;
+            }
+
+            result = frame.best == NONE
+                     ? NONE
+                     : new Completion(frame.gain + frame.best.score, frame.node, frame.bestEdge, frame.best);
+            remember(frame.node, frame.key, result);
+            frame.clear();
+            depth--;
+        }
+        return result;
+    }
+
+    // Answers a state from the memo or directly if possible; otherwise pushes a frame
+    // for it and returns null.
+    private Completion begin(int node, long[] collectedShared, long[] visited) {
+        if (!bounds.canReachAcceptedEnding(node)) {
+            return NONE;
+        }
+
+        long[] relevant = intersect(collectedShared, bounds.getReachableCgs(node));
+        StateKey key = null;
+        if (relevant == NO_CGS && visited == NO_NODES) {
+            if (emptyStateMemo[node] != null) {
+                return emptyStateMemo[node];
+            }
+        } else {
+            key = new StateKey(visited, relevant);
+            Map<StateKey, Completion> nodeMemo = memo.get(node);
+            Completion cached = nodeMemo != null ? nodeMemo.get(key) : null;
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (control != null && control.tick()) {
+            return NONE;
+        }
+        statesEvaluated++;
+        stateCount[node]++;
+
+        // Points this node adds: its new CGs less the length penalty. Coming back through
+        // its self-loop collects nothing new.
+        boolean revisit = visited != NO_NODES && CgBits.contains(visited, graph.getIndexInComponent(node));
+        int gain = (revisit ? 0 : uniqueCgWeight[node]) + newSharedWeight(relevant, sharedCgs[node])
+                   - graph.getLengthPenalty();
+        if (graph.isEnding(node)) {
+            Completion result = bounds.isAccepting(node)
+                                ? new Completion(gain + graph.getEndingBonus(node), node, -1, null)
+                                : NONE;
+            remember(node, key, result);
+            return result;
+        }
+
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        if (frames[depth] == null) {
+            frames[depth] = new Frame();
+        }
+        Frame frame = frames[depth++];
+        frame.node = node;
+        frame.key = key;
+        frame.gain = gain;
+        frame.nextCollected = CgBits.union(relevant, sharedCgs[node]);
+        frame.visited = visited;
+        frame.revisit = revisit;
+        frame.nextVisited = NO_NODES;
+        int component = graph.getComponent(node);
+        if (graph.isCyclicComponent(component)) {
+            frame.nextVisited = visited != NO_NODES
+                                ? visited.clone()
+                                : new long[CgBits.wordCount(graph.getComponentSize(component))];
+            CgBits.set(frame.nextVisited, graph.getIndexInComponent(node));
+        }
+        frame.nextEdge = graph.getChoiceStart(node);
+        frame.best = NONE;
+        frame.bestEdge = -1;
+        return null;
+    }
+
+    private void remember(int node, StateKey key, Completion result) {
+        if (key == null) {
+            emptyStateMemo[node] = result;
+        } else {
+            if (memo.get(node) == null) {
+                memo.set(node, new HashMap<>());
+            }
+            memo.get(node).put(key, result);
+        }
+    }
+
+    private StoryPath materialize(Completion completion) {
+        List<String> nodeSequence = new ArrayList<>();
+        List<Choice> choiceSequence = new ArrayList<>();
+        long[] cgBits = new long[graph.getCgIndex().wordCount()];
+        String endingType = null;
+
+        for (Completion step = completion; step != null; step = step.next) {
+            nodeSequence.add(graph.getNodeId(step.node));
+            for (int slot = graph.getCgStart(step.node); slot < graph.getCgEnd(step.node); slot++) {
+                CgBits.set(cgBits, graph.getCgAt(slot));
+            }
+            if (step.edge >= 0) {
+                choiceSequence.add(graph.getChoice(step.edge));
+            } else {
+                endingType = graph.getEndingType(step.node);
+            }
+        }
+
+        return new StoryPath(nodeSequence, choiceSequence, graph.getCgIndex(), cgBits, endingType, true,
+                             graph.getScoringModel());
+    }
+
+    private int[] distinctCgs(int node) {
+        return java.util.stream.IntStream.range(graph.getCgStart(node), graph.getCgEnd(node))
+                                         .map(graph::getCgAt)
+                                         .distinct()
+                                         .toArray();
+    }
+
+    // a & b, or NO_CGS when the intersection is empty
+    private static long[] intersect(long[] a, long[] b) {
+        int length = Math.min(a.length, b.length);
+        long[] result = null;
+        for (int w = 0; w < length; w++) {
+            long word = a[w] & b[w];
+            if (word != 0) {
+                if (result == null) {
+                    result = new long[length];
+                }
+                result[w] = word;
+            }
+        }
+        return result != null ? result : NO_CGS;
+    }
+
+    // Total weight of shared \ collected
+    private int newSharedWeight(long[] collected, long[] shared) {
+        int weight = 0;
+        for (int w = 0; w < shared.length; w++) {
+            long word = shared[w] & ~(w < collected.length ? collected[w] : 0L);
+            while (word != 0) {
+                weight += graph.getCgWeight((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return weight;
+    }
+
+    // A state being solved: its node, memo key, the CGs and component nodes its
+    // successors start with, the next choice to try and the best completion so far.
+    // Frames are reused.
+    private static final class Frame {
+        int node;
+        StateKey key;
+        int gain;
+        long[] nextCollected;
+        long[] visited;
+        boolean revisit;
+        // Component nodes on the path for a successor in the same cyclic component,
+        // or NO_NODES when the node is not in one
+        long[] nextVisited;
+        int nextEdge;
+        int pendingEdge;
+        Completion best;
+        int bestEdge;
+
+        void consider(Completion child, int edge) {
+            if (child != NONE && (best == NONE || child.score > best.score)) {
+                best = child;
+                bestEdge = edge;
+            }
+        }
+
+        void clear() {
+            key = null;
+            nextCollected = null;
+            visited = null;
+            nextVisited = null;
+            best = null;
+        }
+    }
+
+    // Best way to finish from a node: the points still to be earned, the choice to
+    // take (or -1 at the ending) and the rest of the route.
+    private static final class Completion {
+        final int score;
+        final int node;
+        final int edge;
+        final Completion next;
+
+        Completion(int score, int node, int edge, Completion next) {
+            this.score = score;
+            this.node = node;
+            this.edge = edge;
+            this.next = next;
+        }
+    }
+
+    // Component nodes already on the path and relevant shared CGs collected.
+    private static final class StateKey {
+        private final long[] visited;
+        private final long[] cgs;
+        private final int hash;
+
+        StateKey(long[] visited, long[] cgs) {
+            this.visited = visited;
+            this.cgs = cgs;
+            this.hash = 31 * Arrays.hashCode(visited) + Arrays.hashCode(cgs);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StateKey)) {
+                return false;
+            }
+            StateKey other = (StateKey) obj;
+            return Arrays.equals(visited, other.visited) && Arrays.equals(cgs, other.cgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.story.algorithm;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import com.story.model.*;
+
+// Partial paths that reached each node of a search and were not dominated when they
+// did, for the depth-first searches that drop dominated partial paths. A label
+// describes a partial path as seen from the node it enters; the search decides when
+// one label dominates another, since that depends on what it optimizes.
+final class DominanceLabels<L> {
+    // Most labels kept per node; once full, arrivals are still checked against them
+    // but no longer recorded, which bounds the cost of each check
+    static final int MAX_LABELS_PER_NODE = 32;
+
+    private final List<List<L>> labels;
+    // Whether the first label dominates the second
+    private final BiPredicate<L, L> dominates;
+
+    DominanceLabels(int nodeCount, BiPredicate<L, L> dominates) {
+        this.labels = new ArrayList<>(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            labels.add(new ArrayList<>());
+        }
+        this.dominates = dominates;
+    }
+
+    // Records the label of a path entering node, or returns false when an earlier
+    // label at node dominates it. Earlier labels it dominates are dropped.
+    boolean add(int node, L label) {
+        List<L> atNode = labels.get(node);
+        for (L earlier : atNode) {
+            if (dominates.test(earlier, label)) {
+                return false;
+            }
+        }
+        atNode.removeIf(later -> dominates.test(label, later));
+        if (atNode.size() < MAX_LABELS_PER_NODE) {
+            atNode.add(label);
+        }
+        return true;
+    }
+
+    // The collected CGs still reachable from the node being entered, the only ones a
+    // label has to compare one by one.
+    static long[] reachableCollected(WorkingPath path, long[] reachable) {
+        long[] collected = path.getCgBits();
+        long[] inside = new long[collected.length];
+        for (int w = 0; w < collected.length; w++) {
+            inside[w] = collected[w] & reachable[w];
+        }
+        return inside;
+    }
+
+    // True when a path that used usedByA of a loop has every way on through it that a
+    // path that used usedByB has, both as given by FrameStack.usedInComponent.
+    static boolean leavesLoopOpen(long[] usedByA, long[] usedByB) {
+        return usedByA == null || CgBits.containsAll(usedByB, usedByA);
+    }
+}
@@ -0,0 +1,110 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Explicit stack of frames for the depth-first searches, one per non-ending node on
+// the working path, each holding the next choice to try. Owns the working path and
+// the on-path flags, so every search follows the same no-revisit rule: a node is
+// only visited once per path, except that its own self-loop may be taken once.
+// Searches push a frame when they enter a node and pop it once its choices are
+// exhausted; popping undoes everything the push did.
+final class FrameStack {
+    private final CompiledStoryGraph graph;
+    private final WorkingPath path;
+    private final boolean[] onPath;
+
+    // Node, next choice to try and whether the node was already on the path before
+    // this frame. Sized for the deepest simple path up front.
+    private int[] frameNodes;
+    private int[] nextEdges;
+    private boolean[] wasOnPath;
+    private int depth;
+
+    FrameStack(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.path = new WorkingPath(graph);
+        this.onPath = new boolean[graph.getNodeCount()];
+        int frames = Math.max(16, graph.getNodeCount() + 1);
+        this.frameNodes = new int[frames];
+        this.nextEdges = new int[frames];
+        this.wasOnPath = new boolean[frames];
+    }
+
+    WorkingPath getPath() {
+        return path;
+    }
+
+    // Replays a step that was already taken before the search starts, so a search can
+    // continue a subtree below an existing prefix. Prefix steps get no frame.
+    void pushPrefix(int node, int edge) {
+        path.pushNode(node);
+        path.pushChoice(edge);
+        onPath[node] = true;
+    }
+
+    boolean isEmpty() {
+        return depth == 0;
+    }
+
+    int getTopNode() {
+        return frameNodes[depth - 1];
+    }
+
+    boolean hasNextChoice() {
+        return nextEdges[depth - 1] < graph.getChoiceEnd(frameNodes[depth - 1]);
+    }
+
+    // The next choice of the top frame, which moves on to the one after it.
+    int nextChoice() {
+        return nextEdges[depth - 1]++;
+    }
+
+    // Whether the path may step from node, the top frame's node, to next. A node only
+    // counts as visited for its descendants, so a self-loop can be taken once.
+    boolean canStep(int node, int next) {
+        return next == node ? !wasOnPath[depth - 1] : !onPath[next];
+    }
+
+    // Pushes node onto the working path with a frame of its own. Its choice, if any,
+    // must already be pushed.
+    void push(int node) {
+        if (depth == frameNodes.length) {
+            frameNodes = Arrays.copyOf(frameNodes, depth * 2);
+            nextEdges = Arrays.copyOf(nextEdges, depth * 2);
+            wasOnPath = Arrays.copyOf(wasOnPath, depth * 2);
+        }
+        path.pushNode(node);
+        frameNodes[depth] = node;
+        nextEdges[depth] = graph.getChoiceStart(node);
+        wasOnPath[depth] = onPath[node];
+        onPath[node] = true;
+        depth++;
+    }
+
+    // Nodes of next's loop already on the path, by index within the loop, or null
+    // when next is not in a loop. Nodes of a loop are contiguous at the end of the
+    // path, and next itself is only among them when it is entered again by its own
+    // choice.
+    long[] usedInComponent(int next) {
+        int component = graph.getComponent(next);
+        if (!graph.isCyclicComponent(component)) {
+            return null;
+        }
+        long[] used = new long[CgBits.wordCount(graph.getComponentSize(component))];
+        for (int i = depth - 1; i >= 0 && graph.getComponent(frameNodes[i]) == component; i--) {
+            CgBits.set(used, graph.getIndexInComponent(frameNodes[i]));
+        }
+        return used;
+    }
+
+    // Removes the top frame with its node and the choice that led to it.
+    void pop() {
+        depth--;
+        onPath[frameNodes[depth]] = wasOnPath[depth];
+        path.popNode();
+        if (depth > 0) {
+            path.popChoice();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.story.algorithm;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import com.story.model.*;
+
+// Exhaustive path enumeration spread over a ForkJoinPool.
+// The top levels of the choice tree are split into subtasks, each running its own
+// BacktrackingSearch with local paths and counters. Subtask results are merged in
+// choice order, so paths, counts and tie-breaking match the sequential search no
+// matter how the work was scheduled.
+final class ParallelPathSearch {
+    // Choice-tree depth below which subtrees are always searched sequentially
+    private static final int MAX_SPLIT_DEPTH = 6;
+    // Stop splitting once this many tasks are waiting for a worker
+    private static final int MAX_QUEUED_TASKS = 3;
+
+    private final CompiledStoryGraph graph;
+    private final int target;
+    // Nodes that can still reach the target, or null when any ending counts
+    private final boolean[] canReachTarget;
+    private final int parallelism;
+    // Template for the per-task collectors
+    private final PathCollector collectorTemplate;
+    private SearchControl control;
+
+    ParallelPathSearch(CompiledStoryGraph graph, int target, int parallelism, PathCollector collectorTemplate) {
+        this.graph = graph;
+        this.target = target;
+        this.canReachTarget = target >= 0 ? graph.getNodesReaching(target) : null;
+        this.parallelism = parallelism;
+        this.collectorTemplate = collectorTemplate;
+    }
+
+    // Shared by every subtask; null when the search is unlimited.
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    // Runs on a pool of its own, shut down when the search ends.
+    Segment run() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Runs on the caller's pool, which stays open for its other work.
+    Segment run(ForkJoinPool pool) {
+        return pool.invoke(new SubtreeTask(graph.getStartIndex(), new int[0], new int[0]));
+    }
+
+    // Merged results of one subtree.
+    static final class Segment {
+        private final PathCollector collector;
+        private int[] nodeVisitCount;
+        private int exploredPaths;
+        private StoryPath bestPath;
+
+        private Segment(PathCollector collector) {
+            this.collector = collector;
+        }
+
+        PathCollector getCollector() {
+            return collector;
+        }
+
+        // Null if the segment did not visit any node.
+        int[] getNodeVisitCount() {
+            return nodeVisitCount;
+        }
+
+        int getExploredPaths() {
+            return exploredPaths;
+        }
+
+        StoryPath getBestPath() {
+            return bestPath;
+        }
+
+        private void visit(int node, int nodeCount) {
+            if (nodeVisitCount == null) {
+                nodeVisitCount = new int[nodeCount];
+            }
+            nodeVisitCount[node]++;
+        }
+
+        // Appends a later subtree; an earlier best path wins ties.
+        private void append(PathCollector paths, int[] visits, int explored, StoryPath best) {
+            collector.append(paths);
+            exploredPaths += explored;
+            if (visits != null) {
+                if (nodeVisitCount == null) {
+                    nodeVisitCount = visits;
+                } else {
+                    for (int node = 0; node < visits.length; node++) {
+                        nodeVisitCount[node] += visits[node];
+                    }
+                }
+            }
+            if (best != null && (bestPath == null || best.calculateScore() > bestPath.calculateScore())) {
+                bestPath = best;
+            }
+        }
+    }
+
+    // Searches the subtree entered at node, below the given prefix of nodes and choices.
+    private final class SubtreeTask extends RecursiveTask<Segment> {
+        private static final long serialVersionUID = 1L;
+
+        private final int node;
+        private final int[] prefixNodes;
+        private final int[] prefixEdges;
+
+        SubtreeTask(int node, int[] prefixNodes, int[] prefixEdges) {
+            this.node = node;
+            this.prefixNodes = prefixNodes;
+            this.prefixEdges = prefixEdges;
+        }
+
+        @Override
+        protected Segment compute() {
+            int depth = prefixNodes.length;
+            if (node < 0 || graph.isEnding(node) || depth >= MAX_SPLIT_DEPTH
+                    || getSurplusQueuedTaskCount() > MAX_QUEUED_TASKS) {
+                return searchSequentially();
+            }
+            if (control != null && control.tick()) {
+                return new Segment(collectorTemplate.newEmpty());
+            }
+
+            // Same rule as the sequential search: a node is only on the path for its
+            // descendants, so its own self-loop may be taken once
+            boolean wasOnPath = contains(prefixNodes, node);
+            List<SubtreeTask> children = new ArrayList<>();
+            for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                int next = graph.getDestination(edge);
+                boolean blocked = (canReachTarget != null && (next < 0 || !canReachTarget[next]))
+                                  || (next >= 0 && (next == node ? wasOnPath : contains(prefixNodes, next)));
+                if (!blocked) {
+                    children.add(new SubtreeTask(next, append(prefixNodes, node), append(prefixEdges, edge)));
+                }
+            }
+            invokeAll(children);
+
+            Segment segment = new Segment(collectorTemplate.newEmpty());
+            segment.exploredPaths = 1;
+            segment.visit(node, graph.getNodeCount());
+            for (SubtreeTask child : children) {
+                Segment result = child.join();
+                segment.append(result.collector, result.nodeVisitCount, result.exploredPaths, result.bestPath);
+            }
+            return segment;
+        }
+
+        private Segment searchSequentially() {
+            BacktrackingSearch search = new BacktrackingSearch(graph, target, collectorTemplate.newEmpty());
+            for (int i = 0; i < prefixNodes.length; i++) {
+                search.pushPrefix(prefixNodes[i], prefixEdges[i]);
+            }
+            search.setControl(control);
+            search.run(node);
+
+            Segment segment = new Segment(search.getCollector());
+            segment.nodeVisitCount = search.getNodeVisitCount();
+            segment.exploredPaths = search.getExploredPaths();
+            segment.bestPath = search.getBestPath();
+            return segment;
+        }
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] append(int[] values, int value) {
+        int[] result = Arrays.copyOf(values, values.length + 1);
+        result[values.length] = value;
+        return result;
+    }
+}
@@ -0,0 +1,251 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Depth-first multi-objective search for the Pareto-optimal paths over three
+// objectives: more CGs, fewer nodes and a better ending, ranked by its ending bonus.
+// A path is kept when no other path is at least as good on all three and better
+// on one; of several paths with the same objectives only the first in search
+// order is kept. Two kinds of dominance prune the search:
+// - a choice is skipped when a kept path already beats or ties every path that
+//   could go through it, judged by the CGs still reachable, the fewest nodes to
+//   an accepted ending and the best ending bonus ahead;
+// - a partial path is dropped when an earlier partial path reached the same node
+//   with a superset of the CGs that matter there, at least as many of the others,
+//   no more nodes and, inside a loop, no more of the loop's nodes used up.
+// Runs on an explicit frame stack in the same order as a recursive search.
+final class ParetoPathSearch {
+    private static final int NO_ENDING = Integer.MAX_VALUE;
+
+    private final CompiledStoryGraph graph;
+    private final ReachabilityBounds bounds;
+    private final FrameStack frames;
+    private final WorkingPath path;
+    private final int[] nodeVisitCount;
+    // Fewest nodes after a node up to an accepted ending, or NO_ENDING
+    private final int[] remainingLength;
+    // Partial paths that reached each node and were not dominated when they did
+    private final DominanceLabels<Label> labels;
+
+    // Current Pareto front, in the order found
+    private final List<FrontEntry> front;
+    private int exploredPaths;
+    private int prunedBranches;
+    private int dominatedPaths;
+    // Budgets of the running query, or null when unlimited
+    private SearchControl control;
+
+    ParetoPathSearch(CompiledStoryGraph graph, ReachabilityBounds bounds) {
+        int nodeCount = graph.getNodeCount();
+        this.graph = graph;
+        this.bounds = bounds;
+        this.frames = new FrameStack(graph);
+        this.path = frames.getPath();
+        this.nodeVisitCount = new int[nodeCount];
+        this.remainingLength = computeRemainingLength(graph, bounds);
+        this.labels = new DominanceLabels<>(nodeCount, Label::dominates);
+        this.front = new ArrayList<>();
+    }
+
+    void setControl(SearchControl control) {
+        this.control = control;
+    }
+
+    void run() {
+        exploredPaths++;
+        int start = graph.getStartIndex();
+        if (start < 0 || !bounds.canReachAcceptedEnding(start)) {
+            return;
+        }
+
+        enter(start);
+        while (!frames.isEmpty()) {
+            int node = frames.getTopNode();
+
+            if (frames.hasNextChoice() && (control == null || !control.isStopped())) {
+                int edge = frames.nextChoice();
+                int next = graph.getDestination(edge);
+
+                if (next >= 0 && !frames.canStep(node, next)) {
+                    continue;
+                }
+                exploredPaths++;
+                if (next < 0 || !bounds.canReachAcceptedEnding(next) || isCoveredByFront(next)) {
+                    prunedBranches++;
+                    continue;
+                }
+                if (!graph.isEnding(next) && !addLabel(next)) {
+                    dominatedPaths++;
+                    continue;
+                }
+
+                path.pushChoice(edge);
+                if (!enter(next)) {
+                    path.popChoice();
+                }
+            } else {
+                frames.pop();
+            }
+        }
+    }
+
+    // The Pareto-optimal paths, most CGs first, then shortest, then best ending.
+    List<StoryPath> getParetoFront() {
+        List<FrontEntry> sorted = new ArrayList<>(front);
+        sorted.sort(Comparator.comparingInt((FrontEntry entry) -> -entry.cgCount)
+                              .thenComparingInt(entry -> entry.length)
+                              .thenComparingInt(entry -> -entry.endingRank));
+        List<StoryPath> paths = new ArrayList<>(sorted.size());
+        for (FrontEntry entry : sorted) {
+            paths.add(entry.path);
+        }
+        return paths;
+    }
+
+    int getExploredPaths() {
+        return exploredPaths;
+    }
+
+    int getPrunedBranches() {
+        return prunedBranches;
+    }
+
+    // Partial paths dropped because an earlier one at the same node dominated them.
+    int getDominatedPaths() {
+        return dominatedPaths;
+    }
+
+    int[] getNodeVisitCount() {
+        return nodeVisitCount;
+    }
+
+    // Steps into node. Endings are offered to the front at once; any other node gets
+    // a frame. Returns true if a frame was pushed.
+    private boolean enter(int node) {
+        if (control != null && control.tick()) {
+            return false;
+        }
+        nodeVisitCount[node]++;
+
+        if (graph.isEnding(node)) {
+            if (bounds.isAccepting(node)) {
+                path.pushNode(node);
+                offer(path.getCgCount(), path.getDepth(), graph.getEndingBonus(node), node);
+                path.popNode();
+            }
+            return false;
+        }
+
+        frames.push(node);
+        return true;
+    }
+
+    // True when a kept path is at least as good as anything continuing into next.
+    private boolean isCoveredByFront(int next) {
+        int bestCgs = CgBits.unionCardinality(path.getCgBits(), bounds.getReachableCgs(next));
+        int shortest = path.getDepth() + 1 + remainingLength[next];
+        int bestRank = bounds.getBestEndingBonus(next);
+        for (FrontEntry entry : front) {
+            if (entry.cgCount >= bestCgs && entry.length <= shortest && entry.endingRank >= bestRank) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Adds the complete path on the working path unless a kept path dominates or ties
+    // it, dropping the kept paths it dominates.
+    private void offer(int cgCount, int length, int endingRank, int endingNode) {
+        for (FrontEntry entry : front) {
+            if (entry.cgCount >= cgCount && entry.length <= length && entry.endingRank >= endingRank) {
+                return;
+            }
+        }
+        front.removeIf(entry -> cgCount >= entry.cgCount && length <= entry.length && endingRank >= entry.endingRank);
+        front.add(new FrontEntry(cgCount, length, endingRank, path.toCompletePath(graph.getEndingType(endingNode))));
+    }
+
+    // Records the partial path about to enter next, or returns false when an earlier
+    // partial path at next dominates it. Only the collected CGs that next can still
+    // reach are compared one by one; the rest only count. Inside a loop the nodes
+    // already used there limit where the path can go, so they must be a superset of
+    // the earlier path's.
+    private boolean addLabel(int next) {
+        long[] inside = DominanceLabels.reachableCollected(path, bounds.getReachableCgs(next));
+        Label label = new Label(inside, path.getCgCount() - CgBits.cardinality(inside), path.getDepth(),
+                                frames.usedInComponent(next));
+        return labels.add(next, label);
+    }
+
+    // Fewest nodes from each node's successors to an accepted ending, found by a
+    // breadth-first search backwards from the endings. Ignores the no-revisit rule,
+    // so it never overestimates.
+    private static int[] computeRemainingLength(CompiledStoryGraph graph, ReachabilityBounds bounds) {
+        int nodeCount = graph.getNodeCount();
+        int[] remaining = new int[nodeCount];
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        Arrays.fill(remaining, NO_ENDING);
+        for (int node = 0; node < nodeCount; node++) {
+            if (bounds.isAccepting(node)) {
+                remaining[node] = 0;
+                queue[tail++] = node;
+            }
+        }
+
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = graph.getPredecessorStart(node); i < graph.getPredecessorEnd(node); i++) {
+                int predecessor = graph.getPredecessor(i);
+                if (!graph.isEnding(predecessor) && remaining[predecessor] == NO_ENDING) {
+                    remaining[predecessor] = remaining[node] + 1;
+                    queue[tail++] = predecessor;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    // A kept complete path and its objectives.
+    private static final class FrontEntry {
+        final int cgCount;
+        final int length;
+        final int endingRank;
+        final StoryPath path;
+
+        FrontEntry(int cgCount, int length, int endingRank, StoryPath path) {
+            this.cgCount = cgCount;
+            this.length = length;
+            this.endingRank = endingRank;
+            this.path = path;
+        }
+    }
+
+    // A partial path as seen from the node it is entering: collected CGs that node can
+    // still reach, the number of other collected CGs, nodes so far and the loop nodes
+    // it has used up.
+    private static final class Label {
+        final long[] reachableCgs;
+        final int otherCgCount;
+        final int length;
+        final long[] usedInLoop;
+
+        Label(long[] reachableCgs, int otherCgCount, int length, long[] usedInLoop) {
+            this.reachableCgs = reachableCgs;
+            this.otherCgCount = otherCgCount;
+            this.length = length;
+            this.usedInLoop = usedInLoop;
+        }
+
+        // Every way to finish other is also open to this path and ends with at least
+        // as many CGs and no more nodes.
+        boolean dominates(Label other) {
+            return otherCgCount >= other.otherCgCount
+                   && length <= other.length
+                   && CgBits.containsAll(reachableCgs, other.reachableCgs)
+                   && DominanceLabels.leavesLoopOpen(usedInLoop, other.usedInLoop);
+        }
+    }
+}
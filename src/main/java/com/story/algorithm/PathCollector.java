@@ -0,0 +1,19 @@
+package com.story.algorithm;
+
+// Receives the complete paths an exhaustive search finds, in discovery order.
+// Implementations decide what to retain, so the search itself never has to hold
+// on to paths.
+interface PathCollector {
+    // Called with the ending node already pushed on the working path.
+    void collect(WorkingPath path, int endingNode);
+
+    // Adds what a later part of the same search collected, as if it had been
+    // collected here after everything already seen. Used to merge parallel subtasks.
+    void append(PathCollector later);
+
+    // An empty collector with the same settings, for a parallel subtask.
+    PathCollector newEmpty();
+
+    // Summary of every complete path seen, retained or not.
+    PathStatistics getStatistics();
+}
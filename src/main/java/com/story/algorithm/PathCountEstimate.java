@@ -0,0 +1,45 @@
+package com.story.algorithm;
+
+import java.math.BigInteger;
+
+// Size of a story's search before running it: how many complete paths there are
+// and how many steps (explored paths) an exhaustive search would take. Exact on
+// acyclic stories, sampled on cyclic ones.
+public final class PathCountEstimate {
+    private final BigInteger completePaths;
+    private final BigInteger searchSteps;
+    private final boolean exact;
+    private final int samples;
+
+    PathCountEstimate(BigInteger completePaths, BigInteger searchSteps, boolean exact, int samples) {
+        this.completePaths = completePaths;
+        this.searchSteps = searchSteps;
+        this.exact = exact;
+        this.samples = samples;
+    }
+
+    public BigInteger getCompletePaths() {
+        return completePaths;
+    }
+
+    // Paths an exhaustive backtracking search would explore.
+    public BigInteger getSearchSteps() {
+        return searchSteps;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    // Random walks behind an estimate, 0 when the counts are exact.
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PathCountEstimate{completePaths=%s%s, searchSteps=%s, %s}",
+                           exact ? "" : "~", completePaths, searchSteps,
+                           exact ? "exact" : samples + " samples");
+    }
+}
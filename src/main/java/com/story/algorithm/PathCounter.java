@@ -0,0 +1,135 @@
+package com.story.algorithm;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+// Counts the paths an exhaustive search would visit, without running it.
+// On an acyclic story every path is simple, so a pass over the reverse
+// topological order counts them exactly. With cycles the number of simple paths
+// depends on the whole path so far, and it is estimated instead with Knuth's
+// random-walk estimator: walk down the search tree picking a random allowed
+// choice at each step, weighting each level by the product of the branching
+// factors seen so far. The average over many walks is an unbiased estimate.
+final class PathCounter {
+    static final int DEFAULT_SAMPLES = 1000;
+    // Fixed seed, so the same story always gets the same estimate
+    private static final long SEED = 0x5EED_5EEDL;
+
+    private PathCounter() {
+    }
+
+    // Counts paths to target, or to any ending when target is -1.
+    static PathCountEstimate count(CompiledStoryGraph graph, int target) {
+        if (graph.getStartIndex() < 0) {
+            return new PathCountEstimate(BigInteger.ZERO, BigInteger.ONE, true, 0);
+        }
+        return graph.isAcyclic() ? countExactly(graph, target) : sample(graph, target, DEFAULT_SAMPLES);
+    }
+
+    private static PathCountEstimate countExactly(CompiledStoryGraph graph, int target) {
+        int[] order = graph.getTopologicalOrder();
+        boolean[] canReach = target >= 0 ? graph.getNodesReaching(target) : null;
+        BigInteger[] paths = new BigInteger[graph.getNodeCount()];
+        BigInteger[] steps = new BigInteger[graph.getNodeCount()];
+
+        for (int i = order.length - 1; i >= 0; i--) {
+            int node = order[i];
+            if (graph.isEnding(node)) {
+                paths[node] = target < 0 || node == target ? BigInteger.ONE : BigInteger.ZERO;
+                steps[node] = BigInteger.ONE;
+                continue;
+            }
+
+            BigInteger nodePaths = BigInteger.ZERO;
+            BigInteger nodeSteps = BigInteger.ONE;
+            for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                int next = graph.getDestination(edge);
+                if (canReach != null && (next < 0 || !canReach[next])) {
+                    // The search prunes this choice without exploring it
+                    continue;
+                }
+                if (next < 0) {
+                    nodeSteps = nodeSteps.add(BigInteger.ONE);
+                } else {
+                    nodePaths = nodePaths.add(paths[next]);
+                    nodeSteps = nodeSteps.add(steps[next]);
+                }
+            }
+            paths[node] = nodePaths;
+            steps[node] = nodeSteps;
+        }
+
+        int start = graph.getStartIndex();
+        return new PathCountEstimate(paths[start], steps[start], true, 0);
+    }
+
+    private static PathCountEstimate sample(CompiledStoryGraph graph, int target, int samples) {
+        boolean[] canReach = target >= 0 ? graph.getNodesReaching(target) : null;
+        boolean[] onPath = new boolean[graph.getNodeCount()];
+        int[] walk = new int[graph.getNodeCount() + 1];
+        int[] allowed = new int[16];
+        Random random = new Random(SEED);
+
+        double totalPaths = 0;
+        double totalSteps = 0;
+        for (int s = 0; s < samples; s++) {
+            int node = graph.getStartIndex();
+            int walkLength = 0;
+            // Number of tree nodes at the current depth this walk stands for
+            double weight = 1;
+            double steps = 1;
+            double paths = 0;
+
+            while (node >= 0 && !graph.isEnding(node)) {
+                boolean wasOnPath = onPath[node];
+                onPath[node] = true;
+                if (walkLength == walk.length) {
+                    walk = Arrays.copyOf(walk, walkLength * 2);
+                }
+                walk[walkLength++] = node;
+
+                int count = 0;
+                for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                    int next = graph.getDestination(edge);
+                    if (canReach != null && (next < 0 || !canReach[next])) {
+                        continue;
+                    }
+                    // Same rule as the search: a node's own self-loop may be taken once
+                    if (next < 0 || (next == node ? !wasOnPath : !onPath[next])) {
+                        if (count == allowed.length) {
+                            allowed = Arrays.copyOf(allowed, count * 2);
+                        }
+                        allowed[count++] = next;
+                    }
+                }
+                if (count == 0) {
+                    break;
+                }
+
+                weight *= count;
+                steps += weight;
+                node = allowed[random.nextInt(count)];
+            }
+            if (node >= 0 && graph.isEnding(node) && (target < 0 || node == target)) {
+                paths = weight;
+            }
+
+            for (int i = 0; i < walkLength; i++) {
+                onPath[walk[i]] = false;
+            }
+            totalPaths += paths;
+            totalSteps += steps;
+        }
+
+        return new PathCountEstimate(toBigInteger(totalPaths / samples), toBigInteger(totalSteps / samples), false, samples);
+    }
+
+    private static BigInteger toBigInteger(double value) {
+        if (Double.isInfinite(value) || Double.isNaN(value)) {
+            // Past the range of a double: report the largest finite value
+            value = Double.MAX_VALUE;
+        }
+        return new BigDecimal(value).setScale(0, java.math.RoundingMode.HALF_UP).toBigInteger();
+    }
+}
@@ -0,0 +1,104 @@
+package com.story.algorithm;
+
+// One optimal-path question for a PathQueryService: the best path to a given ending
+// node, to an ending of a given type or to any ending, optionally with its own
+// engine, budgets and cancellation token. Immutable; the with methods return a
+// changed copy.
+public final class PathQuery {
+    private final String targetEndingNodeId;
+    private final String endingType;
+    // Null leaves the choice to the service
+    private final SearchEngine engine;
+    // 0 means no limit, a null token cannot cancel
+    private final long timeBudgetMillis;
+    private final long nodeBudget;
+    private final CancellationToken cancellationToken;
+
+    private PathQuery(String targetEndingNodeId, String endingType, SearchEngine engine,
+                      long timeBudgetMillis, long nodeBudget, CancellationToken cancellationToken) {
+        this.targetEndingNodeId = targetEndingNodeId;
+        this.endingType = endingType;
+        this.engine = engine;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.nodeBudget = nodeBudget;
+        this.cancellationToken = cancellationToken;
+    }
+
+    // Best path that finishes at the given ending node.
+    public static PathQuery toEnding(String endingNodeId) {
+        if (endingNodeId == null) {
+            throw new IllegalArgumentException("Ending node id must not be null");
+        }
+        return new PathQuery(endingNodeId, null, null, 0L, 0L, null);
+    }
+
+    // Best path to an ending of the given type, or to any ending when the story has
+    // no reachable ending of that type, like StoryPathFinder.findOptimalPath.
+    public static PathQuery forEndingType(String endingType) {
+        if (endingType == null) {
+            throw new IllegalArgumentException("Ending type must not be null");
+        }
+        return new PathQuery(null, endingType, null, 0L, 0L, null);
+    }
+
+    // Best path to any ending.
+    public static PathQuery anyEnding() {
+        return new PathQuery(null, null, null, 0L, 0L, null);
+    }
+
+    public PathQuery withEngine(SearchEngine engine) {
+        return new PathQuery(targetEndingNodeId, endingType, engine, timeBudgetMillis, nodeBudget, cancellationToken);
+    }
+
+    public PathQuery withTimeBudgetMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Time budget must not be negative: " + millis);
+        }
+        return new PathQuery(targetEndingNodeId, endingType, engine, millis, nodeBudget, cancellationToken);
+    }
+
+    public PathQuery withNodeBudget(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Node budget must not be negative: " + steps);
+        }
+        return new PathQuery(targetEndingNodeId, endingType, engine, timeBudgetMillis, steps, cancellationToken);
+    }
+
+    public PathQuery withCancellationToken(CancellationToken token) {
+        return new PathQuery(targetEndingNodeId, endingType, engine, timeBudgetMillis, nodeBudget, token);
+    }
+
+    // Null unless the query asks for one ending node.
+    public String getTargetEndingNodeId() {
+        return targetEndingNodeId;
+    }
+
+    // Null unless the query asks for an ending type.
+    public String getEndingType() {
+        return endingType;
+    }
+
+    public SearchEngine getEngine() {
+        return engine;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    @Override
+    public String toString() {
+        String goal = targetEndingNodeId != null ? "ending=" + targetEndingNodeId
+                      : endingType != null ? "endingType=" + endingType : "anyEnding";
+        return String.format("PathQuery{%s, engine=%s, timeBudget=%dms, nodeBudget=%d}",
+                             goal, engine != null ? engine : "default", timeBudgetMillis, nodeBudget);
+    }
+}
@@ -0,0 +1,151 @@
+package com.story.algorithm;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.story.model.*;
+
+// Answers many independent PathQuery objects against one story at once. The story
+// is compiled a single time and the immutable CompiledStoryGraph is shared by every
+// worker; each query runs in a fresh, quiet StoryPathFinder of its own, so queries
+// share no mutable search state and each gets its own SearchResult. Queries run
+// side by side on a fixed pool of worker threads, which makes throughput grow with
+// the number of cores when a story is asked hundreds of questions.
+public final class PathQueryService implements AutoCloseable {
+    private final CompiledStoryGraph graph;
+    private final int parallelism;
+    private final ExecutorService pool;
+    // Engine of queries that do not choose one
+    private volatile SearchEngine defaultEngine;
+
+    public PathQueryService(Story story) {
+        this(CompiledStoryGraph.compile(story));
+    }
+
+    public PathQueryService(CompiledStoryGraph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    public PathQueryService(CompiledStoryGraph graph, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.graph = graph;
+        this.parallelism = parallelism;
+        this.defaultEngine = SearchEngine.AUTO;
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "path-query-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Engine for queries that do not name one. PARALLEL runs as BACKTRACKING here,
+    // since the queries already keep every worker busy; a query that names PARALLEL
+    // itself still gets its own parallel search.
+    public void setDefaultEngine(SearchEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Default engine must not be null");
+        }
+        this.defaultEngine = engine;
+    }
+
+    public SearchEngine getDefaultEngine() {
+        return defaultEngine;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public CompiledStoryGraph getGraph() {
+        return graph;
+    }
+
+    // Queues the query and returns its pending result. Unknown or non-ending target
+    // nodes are rejected here rather than on a worker.
+    public Future<SearchResult> submit(PathQuery query) {
+        validate(query);
+        return pool.submit(() -> execute(query));
+    }
+
+    // Runs every query and waits for all of them; results are in the order of queries.
+    public List<SearchResult> runAll(List<PathQuery> queries) {
+        for (PathQuery query : queries) {
+            validate(query);
+        }
+        List<Future<SearchResult>> pending = new ArrayList<>(queries.size());
+        for (PathQuery query : queries) {
+            pending.add(pool.submit(() -> execute(query)));
+        }
+
+        List<SearchResult> results = new ArrayList<>(queries.size());
+        for (Future<SearchResult> future : pending) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    // Answers the query on the calling thread, with the same isolation as submit.
+    public SearchResult run(PathQuery query) {
+        validate(query);
+        return execute(query);
+    }
+
+    // Stops accepting queries and waits for the running ones to finish.
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Queries stop on their own budgets or tokens
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void validate(PathQuery query) {
+        String target = query.getTargetEndingNodeId();
+        if (target != null) {
+            int node = graph.getNodeIndex(target);
+            if (node < 0 || !graph.isEnding(node)) {
+                throw new IllegalArgumentException("Target node not found or not an ending: " + target);
+            }
+        }
+    }
+
+    // Only the best path is needed, so the exhaustive engines keep one path overall
+    // and one per ending type instead of every path they enumerate.
+    private SearchResult execute(PathQuery query) {
+        SearchEngine engine = query.getEngine();
+        if (engine == null) {
+            engine = defaultEngine == SearchEngine.PARALLEL ? SearchEngine.BACKTRACKING : defaultEngine;
+        }
+        StoryPathFinder finder = new StoryPathFinder(graph);
+        finder.setVerbose(false);
+        finder.setEngine(engine);
+        finder.setTopK(1);
+        finder.setTimeBudgetMillis(query.getTimeBudgetMillis());
+        finder.setNodeBudget(query.getNodeBudget());
+        finder.setCancellationToken(query.getCancellationToken());
+
+        if (query.getTargetEndingNodeId() != null) {
+            return finder.findOptimalPathToSpecificEndingWithinBudget(query.getTargetEndingNodeId());
+        }
+        return finder.findOptimalPathWithinBudget(query.getEndingType());
+    }
+
+    private static SearchResult await(Future<SearchResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a path query", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Path query failed", e.getCause());
+        }
+    }
+}
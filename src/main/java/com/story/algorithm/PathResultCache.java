@@ -0,0 +1,456 @@
+package com.story.algorithm;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Consumer;
+import com.story.model.*;
+
+// On-disk cache of search results, so a query repeated on an unchanged story is
+// answered without searching. Each story gets one small text file named after its
+// title and a hash of its content; inside, every entry is keyed by the query, the
+// engine settings and a hash of the scoring weights. Editing the story changes the
+// hash, so results of the old version are never served. Different stories may share
+// a title, so no file is dropped just because another version was written; once the
+// directory holds more than MAX_FILES cache files, the least recently used go.
+// Nodes, choices and CGs are stored by id, so entries do not depend on how a graph
+// numbered them.
+public final class PathResultCache {
+    private static final String HEADER = "story-path-cache 1";
+    private static final String FILE_SUFFIX = ".cache";
+    private static final int MAX_FILES = 64;
+
+    private final Path directory;
+    // Entries of the most recently used cache files: query key -> encoded lines. At
+    // most MAX_FILES are kept, like on disk, so a long-running process does not keep
+    // every story it ever looked up.
+    private final Map<String, Map<String, List<String>>> files;
+
+    public PathResultCache(Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("Cache directory must not be null");
+        }
+        this.directory = directory;
+        this.files = new LinkedHashMap<String, Map<String, List<String>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Map<String, List<String>>> eldest) {
+                return size() > MAX_FILES;
+            }
+        };
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Result stored for the query on this story and scoring, or null if there is none
+    // or it no longer fits the graph. An unreadable cache file is reported to warnings.
+    synchronized Entry get(CompiledStoryGraph graph, String query, Consumer<String> warnings) {
+        String fileName = fileName(graph.getStory());
+        List<String> lines = load(fileName, warnings).get(entryKey(graph, query));
+        if (lines == null) {
+            return null;
+        }
+        Entry entry;
+        try {
+            entry = decode(graph, lines);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        // A hit counts as a use, so stories read often outlive ones written once
+        try {
+            Files.setLastModifiedTime(directory.resolve(fileName), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only the eviction order suffers
+        }
+        return entry;
+    }
+
+    // Stores the result for the query and rewrites the story's cache file. A failed
+    // write is reported to warnings, but the result is still served from memory.
+    synchronized void put(CompiledStoryGraph graph, String query, Entry entry, Consumer<String> warnings) {
+        List<String> lines = encode(graph, entry);
+        if (lines == null) {
+            return;
+        }
+        String fileName = fileName(graph.getStory());
+        Map<String, List<String>> entries = load(fileName, warnings);
+        entries.put(entryKey(graph, query), lines);
+
+        try {
+            Files.createDirectories(directory);
+            List<String> content = new ArrayList<>();
+            content.add(HEADER);
+            for (Map.Entry<String, List<String>> stored : entries.entrySet()) {
+                content.add("query " + encodeId(stored.getKey()));
+                content.addAll(stored.getValue());
+                content.add("end");
+            }
+            // Written next to the cache file and moved over it, so readers never see half a file
+            Path temporary = Files.createTempFile(directory, "story", ".tmp");
+            try {
+                Files.write(temporary, content, StandardCharsets.UTF_8);
+                Files.move(temporary, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            evictLeastRecentlyUsed(fileName);
+        } catch (IOException e) {
+            warnings.accept("\u001B[33m" + "Could not write the result cache: " + e.getMessage() + "\u001B[0m");
+        }
+    }
+
+    // Entries of a cache file, read from disk the first time. A missing or unreadable
+    // file counts as empty.
+    private Map<String, List<String>> load(String fileName, Consumer<String> warnings) {
+        Map<String, List<String>> entries = files.get(fileName);
+        if (entries != null) {
+            return entries;
+        }
+        entries = new LinkedHashMap<>();
+        files.put(fileName, entries);
+
+        Path file = directory.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return entries;
+        }
+        try {
+            List<String> content = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (content.isEmpty() || !content.get(0).equals(HEADER)) {
+                return entries;
+            }
+            String query = null;
+            List<String> lines = null;
+            for (String line : content.subList(1, content.size())) {
+                if (line.startsWith("query ")) {
+                    query = decodeId(line.substring("query ".length()));
+                    lines = new ArrayList<>();
+                } else if (line.equals("end") && query != null) {
+                    entries.put(query, lines);
+                    query = null;
+                } else if (query != null) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            warnings.accept("\u001B[33m" + "Ignoring unreadable result cache " + file + ": " + e.getMessage() + "\u001B[0m");
+            entries.clear();
+        }
+        return entries;
+    }
+
+    // Deletes the least recently used cache files beyond MAX_FILES, never the one
+    // just written.
+    private void evictLeastRecentlyUsed(String fileName) throws IOException {
+        List<Path> cacheFiles = new ArrayList<>();
+        try (DirectoryStream<Path> stored = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : stored) {
+                cacheFiles.add(file);
+            }
+        }
+        if (cacheFiles.size() <= MAX_FILES) {
+            return;
+        }
+
+        Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (Path file : cacheFiles) {
+            try {
+                lastUsed.put(file, Files.getLastModifiedTime(file));
+            } catch (IOException e) {
+                // Deleted by another process in the meantime
+                lastUsed.put(file, FileTime.fromMillis(0));
+            }
+        }
+        cacheFiles.sort(Comparator.comparing(lastUsed::get));
+        int excess = cacheFiles.size() - MAX_FILES;
+        for (Path file : cacheFiles) {
+            if (excess == 0) {
+                break;
+            }
+            String name = file.getFileName().toString();
+            if (!name.equals(fileName)) {
+                Files.deleteIfExists(file);
+                files.remove(name);
+                excess--;
+            }
+        }
+    }
+
+    private static List<String> encode(CompiledStoryGraph graph, Entry entry) {
+        List<String> lines = new ArrayList<>();
+        lines.add("engine " + entry.engineUsed.name());
+        lines.add("search " + entry.exploredPaths + " " + entry.prunedBranches + " " + entry.expandedStates);
+
+        StringBuilder visits = new StringBuilder("visits");
+        for (int node = 0; node < entry.nodeVisitCount.length; node++) {
+            if (entry.nodeVisitCount[node] > 0) {
+                visits.append(' ').append(encodeId(graph.getNodeId(node))).append(':').append(entry.nodeVisitCount[node]);
+            }
+        }
+        lines.add(visits.toString());
+
+        StringBuilder totals = new StringBuilder("stats");
+        for (long total : entry.statistics.getTotals()) {
+            totals.append(' ').append(total);
+        }
+        lines.add(totals.toString());
+
+        StringBuilder endings = new StringBuilder("endings");
+        long[] endingCounts = entry.statistics.getEndingCountsByNode();
+        for (int node = 0; node < endingCounts.length; node++) {
+            if (endingCounts[node] > 0) {
+                endings.append(' ').append(encodeId(graph.getNodeId(node))).append(':').append(endingCounts[node]);
+            }
+        }
+        lines.add(endings.toString());
+
+        StringBuilder cgs = new StringBuilder("cgs");
+        long[] cgFrequency = entry.statistics.getCgFrequencyByIndex();
+        for (int cg = 0; cg < cgFrequency.length; cg++) {
+            if (cgFrequency[cg] > 0) {
+                cgs.append(' ').append(encodeId(graph.getCgIndex().getCgId(cg))).append(':').append(cgFrequency[cg]);
+            }
+        }
+        lines.add(cgs.toString());
+
+        // Paths as the position of each choice within its node, starting at the start node
+        for (StoryPath path : entry.paths) {
+            StringBuilder line = new StringBuilder("path ").append(path.calculateScore());
+            List<String> nodes = path.getNodeSequence();
+            List<Choice> choices = path.getChoiceSequence();
+            for (int i = 0; i < choices.size(); i++) {
+                int node = graph.getNodeIndex(nodes.get(i));
+                int next = graph.getNodeIndex(nodes.get(i + 1));
+                int position = -1;
+                for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                    if (graph.getChoiceId(edge) == choices.get(i).getId() && graph.getDestination(edge) == next) {
+                        position = edge - graph.getChoiceStart(node);
+                        break;
+                    }
+                }
+                if (position < 0) {
+                    return null;
+                }
+                line.append(' ').append(position);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static Entry decode(CompiledStoryGraph graph, List<String> lines) {
+        SearchEngine engineUsed = null;
+        int[] search = null;
+        int[] nodeVisitCount = new int[graph.getNodeCount()];
+        long[] totals = null;
+        long[] endingCounts = new long[graph.getNodeCount()];
+        long[] cgFrequency = new long[graph.getCgCount()];
+        List<StoryPath> paths = new ArrayList<>();
+
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            switch (fields[0]) {
+                case "engine":
+                    engineUsed = SearchEngine.valueOf(fields[1]);
+                    break;
+                case "search":
+                    search = new int[] {Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3])};
+                    break;
+                case "visits":
+                    for (int i = 1; i < fields.length; i++) {
+                        nodeVisitCount[nodeIndex(graph, fields[i])] = (int) count(fields[i]);
+                    }
+                    break;
+                case "stats":
+                    totals = new long[fields.length - 1];
+                    for (int i = 1; i < fields.length; i++) {
+                        totals[i - 1] = Long.parseLong(fields[i]);
+                    }
+                    break;
+                case "endings":
+                    for (int i = 1; i < fields.length; i++) {
+                        endingCounts[nodeIndex(graph, fields[i])] = count(fields[i]);
+                    }
+                    break;
+                case "cgs":
+                    for (int i = 1; i < fields.length; i++) {
+                        int cg = graph.getCgIndex().indexOf(decodeId(fields[i].substring(0, fields[i].lastIndexOf(':'))));
+                        if (cg < 0) {
+                            throw new IllegalArgumentException("Unknown CG in cache: " + fields[i]);
+                        }
+                        cgFrequency[cg] = count(fields[i]);
+                    }
+                    break;
+                case "path":
+                    paths.add(decodePath(graph, fields));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown cache line: " + line);
+            }
+        }
+        if (engineUsed == null || search == null || totals == null || totals.length != 10) {
+            throw new IllegalArgumentException("Incomplete cache entry");
+        }
+
+        PathStatistics statistics = PathStatistics.restore(graph, totals, endingCounts, cgFrequency);
+        return new Entry(engineUsed, search[0], search[1], search[2], nodeVisitCount, statistics, paths);
+    }
+
+    // Follows the stored choice positions from the start node; they must end at an ending.
+    private static StoryPath decodePath(CompiledStoryGraph graph, String[] fields) {
+        int score = Integer.parseInt(fields[1]);
+        int[] edges = new int[fields.length - 2];
+        int node = graph.getStartIndex();
+        for (int i = 0; i < edges.length; i++) {
+            int position = Integer.parseInt(fields[i + 2]);
+            if (node < 0 || graph.isEnding(node) || position < 0
+                || position >= graph.getChoiceEnd(node) - graph.getChoiceStart(node)) {
+                throw new IllegalArgumentException("Cached path does not fit the story");
+            }
+            int edge = graph.getChoiceStart(node) + position;
+            edges[i] = edge;
+            node = graph.getDestination(edge);
+        }
+        if (node < 0 || !graph.isEnding(node)) {
+            throw new IllegalArgumentException("Cached path does not end at an ending");
+        }
+        return PathTrie.materialize(graph, edges, score);
+    }
+
+    private static int nodeIndex(CompiledStoryGraph graph, String field) {
+        int node = graph.getNodeIndex(decodeId(field.substring(0, field.lastIndexOf(':'))));
+        if (node < 0) {
+            throw new IllegalArgumentException("Unknown node in cache: " + field);
+        }
+        return node;
+    }
+
+    private static long count(String field) {
+        return Long.parseLong(field.substring(field.lastIndexOf(':') + 1));
+    }
+
+    // Query key extended with the scoring weights the graph was compiled with.
+    private static String entryKey(CompiledStoryGraph graph, String query) {
+        StringBuilder scoring = new StringBuilder();
+        List<String> cgIds = new ArrayList<>(graph.getStory().getAllCgIds());
+        Collections.sort(cgIds);
+        for (String cgId : cgIds) {
+            int cg = graph.getCgIndex().indexOf(cgId);
+            field(scoring, cgId);
+            field(scoring, cg >= 0 ? String.valueOf(graph.getCgWeight(cg)) : null);
+        }
+        for (StoryNode ending : sortedNodes(graph.getStory())) {
+            if (ending.isEnding()) {
+                field(scoring, ending.getId());
+                field(scoring, String.valueOf(graph.getEndingBonus(graph.getNodeIndex(ending.getId()))));
+            }
+        }
+        field(scoring, String.valueOf(graph.getLengthPenalty()));
+        return query + " " + sha256(scoring.toString()).substring(0, 16);
+    }
+
+    // Cache file of a story: its title, made safe for a file name, and its content hash.
+    private static String fileName(Story story) {
+        String title = story.getTitle() == null ? "" : story.getTitle().toLowerCase(Locale.ROOT);
+        String safeTitle = title.replaceAll("[^a-z0-9]+", "_");
+        if (safeTitle.length() > 40) {
+            safeTitle = safeTitle.substring(0, 40);
+        }
+        return (safeTitle.isEmpty() ? "story" : safeTitle) + "-" + contentHash(story) + FILE_SUFFIX;
+    }
+
+    // Hash of everything a story file describes, nodes in id order.
+    private static String contentHash(Story story) {
+        StringBuilder content = new StringBuilder();
+        field(content, story.getTitle());
+        field(content, story.getDescription());
+        field(content, story.getStartNodeId());
+        for (StoryNode node : sortedNodes(story)) {
+            field(content, node.getId());
+            field(content, node.getTitle());
+            field(content, node.getDescription());
+            field(content, String.valueOf(node.isEnding()));
+            field(content, node.getEndingType());
+            field(content, String.valueOf(node.getCgs().size()));
+            for (String cg : node.getCgs()) {
+                field(content, cg);
+            }
+            field(content, String.valueOf(node.getChoices().size()));
+            for (Choice choice : node.getChoices()) {
+                field(content, String.valueOf(choice.getId()));
+                field(content, choice.getText());
+                field(content, choice.getDestination());
+            }
+        }
+        for (Map.Entry<String, String> description : new TreeMap<>(story.getCgDescriptions()).entrySet()) {
+            field(content, description.getKey());
+            field(content, description.getValue());
+        }
+        return sha256(content.toString());
+    }
+
+    private static List<StoryNode> sortedNodes(Story story) {
+        List<StoryNode> nodes = new ArrayList<>(story.getNodes().values());
+        nodes.sort(Comparator.comparing(StoryNode::getId));
+        return nodes;
+    }
+
+    // Appends a value with its length, so no two different field lists hash alike.
+    private static void field(StringBuilder content, String value) {
+        if (value == null) {
+            content.append("-1:");
+        } else {
+            content.append(value.length()).append(':').append(value);
+        }
+    }
+
+    private static String sha256(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String encodeId(String id) {
+        return URLEncoder.encode(id, StandardCharsets.UTF_8);
+    }
+
+    private static String decodeId(String encoded) {
+        return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+    }
+
+    // Everything StoryPathFinder reports about one search: the engine that ran, its
+    // counters, the summary of all complete paths and the few best paths it kept.
+    static final class Entry {
+        final SearchEngine engineUsed;
+        final int exploredPaths;
+        final int prunedBranches;
+        final int expandedStates;
+        final int[] nodeVisitCount;
+        final PathStatistics statistics;
+        final List<StoryPath> paths;
+
+        Entry(SearchEngine engineUsed, int exploredPaths, int prunedBranches, int expandedStates,
+              int[] nodeVisitCount, PathStatistics statistics, List<StoryPath> paths) {
+            this.engineUsed = engineUsed;
+            this.exploredPaths = exploredPaths;
+            this.prunedBranches = prunedBranches;
+            this.expandedStates = expandedStates;
+            this.nodeVisitCount = nodeVisitCount;
+            this.statistics = statistics;
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.story.algorithm;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import com.story.model.*;
+
+// Lazy depth-first enumeration of complete paths.
+// Runs the same search as BacktrackingSearch, in the same order, but keeps its
+// position on an explicit stack of frames so it can stop after every path and
+// resume on the next tryAdvance. Memory stays proportional to the path depth.
+final class PathSpliterator implements Spliterator<StoryPath> {
+    private final CompiledStoryGraph graph;
+    // Ending node that counts as complete, or -1 for any ending
+    private final int target;
+    // Nodes that can still reach the target, or null when any ending counts
+    private final boolean[] canReachTarget;
+    private final FrameStack frames;
+    private final WorkingPath path;
+    private boolean started;
+
+    PathSpliterator(CompiledStoryGraph graph, int target) {
+        this.graph = graph;
+        this.target = target;
+        this.canReachTarget = target >= 0 ? graph.getNodesReaching(target) : null;
+        this.frames = new FrameStack(graph);
+        this.path = frames.getPath();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super StoryPath> action) {
+        if (!started) {
+            started = true;
+            StoryPath found = enter(graph.getStartIndex());
+            if (found != null) {
+                action.accept(found);
+                return true;
+            }
+        }
+
+        while (!frames.isEmpty()) {
+            int node = frames.getTopNode();
+
+            if (frames.hasNextChoice()) {
+                int edge = frames.nextChoice();
+                int next = graph.getDestination(edge);
+
+                if (canReachTarget != null && (next < 0 || !canReachTarget[next])) {
+                    continue;
+                }
+                if (next < 0 || frames.canStep(node, next)) {
+                    path.pushChoice(edge);
+                    StoryPath found = enter(next);
+                    if (found != null) {
+                        action.accept(found);
+                        return true;
+                    }
+                }
+            } else {
+                frames.pop();
+            }
+        }
+        return false;
+    }
+
+    // Steps into node after its choice has been pushed. Endings and missing nodes are
+    // finished at once and return the completed path, if any; other nodes get a frame.
+    private StoryPath enter(int node) {
+        if (node < 0 || graph.isEnding(node)) {
+            StoryPath found = null;
+            if (node >= 0 && (target < 0 || node == target)) {
+                path.pushNode(node);
+                found = path.toCompletePath(graph.getEndingType(node));
+                path.popNode();
+            }
+            if (!frames.isEmpty()) {
+                path.popChoice();
+            }
+            return found;
+        }
+
+        frames.push(node);
+        return null;
+    }
+
+    // The search tree is explored lazily, so it is not split up front
+    @Override
+    public Spliterator<StoryPath> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
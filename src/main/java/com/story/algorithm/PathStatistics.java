@@ -0,0 +1,216 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Running summary of the complete paths a search found: count, score, CG and
+// length totals and extremes, paths per ending and how often each CG was
+// collected. Fed one path at a time while the search runs, so the summary is
+// available even when the paths themselves are not kept.
+public final class PathStatistics {
+    private final CompiledStoryGraph graph;
+    private long pathCount;
+    private long scoreSum;
+    private long cgSum;
+    private long lengthSum;
+    private int minScore = Integer.MAX_VALUE;
+    private int maxScore = Integer.MIN_VALUE;
+    private int minCgs = Integer.MAX_VALUE;
+    private int maxCgs = Integer.MIN_VALUE;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = Integer.MIN_VALUE;
+    // Paths per ending node index, and paths per CG index that collected the CG
+    private final long[] endingCounts;
+    private final long[] cgFrequency;
+
+    PathStatistics(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.endingCounts = new long[graph.getNodeCount()];
+        this.cgFrequency = new long[graph.getCgCount()];
+    }
+
+    // Records the working path, with endingNode already pushed.
+    void add(WorkingPath path, int endingNode) {
+        record(path.getScore(endingNode), path.getCgCount(), path.getDepth(), endingNode);
+        long[] bits = path.getCgBits();
+        for (int cg = CgBits.nextSetBit(bits, 0); cg >= 0; cg = CgBits.nextSetBit(bits, cg + 1)) {
+            cgFrequency[cg]++;
+        }
+    }
+
+    // Records a path some engine has already materialized.
+    void add(StoryPath path) {
+        record(path.calculateScore(), path.getCgCount(), path.getPathLength(), graph.getNodeIndex(path.getCurrentNode()));
+        for (String cgId : path.getCollectedCgs()) {
+            int cg = graph.getCgIndex().indexOf(cgId);
+            if (cg >= 0) {
+                cgFrequency[cg]++;
+            }
+        }
+    }
+
+    // Adds everything other recorded, for merging the summaries of parallel subtasks.
+    void merge(PathStatistics other) {
+        pathCount += other.pathCount;
+        scoreSum += other.scoreSum;
+        cgSum += other.cgSum;
+        lengthSum += other.lengthSum;
+        minScore = Math.min(minScore, other.minScore);
+        maxScore = Math.max(maxScore, other.maxScore);
+        minCgs = Math.min(minCgs, other.minCgs);
+        maxCgs = Math.max(maxCgs, other.maxCgs);
+        minLength = Math.min(minLength, other.minLength);
+        maxLength = Math.max(maxLength, other.maxLength);
+        for (int node = 0; node < endingCounts.length; node++) {
+            endingCounts[node] += other.endingCounts[node];
+        }
+        for (int cg = 0; cg < cgFrequency.length; cg++) {
+            cgFrequency[cg] += other.cgFrequency[cg];
+        }
+    }
+
+    // Rebuilds a summary PathResultCache saved with getTotals and the per-node and
+    // per-CG counts.
+    static PathStatistics restore(CompiledStoryGraph graph, long[] totals, long[] endingCounts, long[] cgFrequency) {
+        PathStatistics statistics = new PathStatistics(graph);
+        statistics.pathCount = totals[0];
+        statistics.scoreSum = totals[1];
+        statistics.cgSum = totals[2];
+        statistics.lengthSum = totals[3];
+        statistics.minScore = (int) totals[4];
+        statistics.maxScore = (int) totals[5];
+        statistics.minCgs = (int) totals[6];
+        statistics.maxCgs = (int) totals[7];
+        statistics.minLength = (int) totals[8];
+        statistics.maxLength = (int) totals[9];
+        System.arraycopy(endingCounts, 0, statistics.endingCounts, 0, statistics.endingCounts.length);
+        System.arraycopy(cgFrequency, 0, statistics.cgFrequency, 0, statistics.cgFrequency.length);
+        return statistics;
+    }
+
+    // Running totals in the order restore takes them.
+    long[] getTotals() {
+        return new long[] {pathCount, scoreSum, cgSum, lengthSum, minScore, maxScore,
+                           minCgs, maxCgs, minLength, maxLength};
+    }
+
+    // Paths per ending node index. Callers must not modify the array.
+    long[] getEndingCountsByNode() {
+        return endingCounts;
+    }
+
+    // Paths per CG index. Callers must not modify the array.
+    long[] getCgFrequencyByIndex() {
+        return cgFrequency;
+    }
+
+    private void record(int score, int cgs, int length, int endingNode) {
+        pathCount++;
+        scoreSum += score;
+        cgSum += cgs;
+        lengthSum += length;
+        minScore = Math.min(minScore, score);
+        maxScore = Math.max(maxScore, score);
+        minCgs = Math.min(minCgs, cgs);
+        maxCgs = Math.max(maxCgs, cgs);
+        minLength = Math.min(minLength, length);
+        maxLength = Math.max(maxLength, length);
+        if (endingNode >= 0) {
+            endingCounts[endingNode]++;
+        }
+    }
+
+    public long getPathCount() {
+        return pathCount;
+    }
+
+    public boolean isEmpty() {
+        return pathCount == 0;
+    }
+
+    // The minimums and maximums are 0 while no path has been recorded.
+    public int getMinScore() {
+        return isEmpty() ? 0 : minScore;
+    }
+
+    public int getMaxScore() {
+        return isEmpty() ? 0 : maxScore;
+    }
+
+    public double getAverageScore() {
+        return isEmpty() ? 0.0 : (double) scoreSum / pathCount;
+    }
+
+    public int getMinCgCount() {
+        return isEmpty() ? 0 : minCgs;
+    }
+
+    public int getMaxCgCount() {
+        return isEmpty() ? 0 : maxCgs;
+    }
+
+    public double getAverageCgCount() {
+        return isEmpty() ? 0.0 : (double) cgSum / pathCount;
+    }
+
+    public int getMinLength() {
+        return isEmpty() ? 0 : minLength;
+    }
+
+    public int getMaxLength() {
+        return isEmpty() ? 0 : maxLength;
+    }
+
+    public double getAverageLength() {
+        return isEmpty() ? 0.0 : (double) lengthSum / pathCount;
+    }
+
+    // Number of paths per ending type.
+    public Map<String, Long> getEndingTypeCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (int node = 0; node < endingCounts.length; node++) {
+            if (endingCounts[node] > 0) {
+                counts.merge(graph.getEndingType(node), endingCounts[node], Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    public long getEndingTypeCount(String endingType) {
+        return getEndingTypeCounts().getOrDefault(endingType, 0L);
+    }
+
+    // Number of paths per ending node id, in id order.
+    public Map<String, Long> getEndingCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int node = 0; node < endingCounts.length; node++) {
+            if (endingCounts[node] > 0) {
+                counts.put(graph.getNodeId(node), endingCounts[node]);
+            }
+        }
+        return counts;
+    }
+
+    // Number of paths that collected each CG, in CG id order. CGs no path collected are left out.
+    public Map<String, Long> getCgFrequency() {
+        Map<String, Long> frequency = new LinkedHashMap<>();
+        for (int cg = 0; cg < cgFrequency.length; cg++) {
+            if (cgFrequency[cg] > 0) {
+                frequency.put(graph.getCgIndex().getCgId(cg), cgFrequency[cg]);
+            }
+        }
+        return frequency;
+    }
+
+    public long getCgFrequency(String cgId) {
+        int cg = graph.getCgIndex().indexOf(cgId);
+        return cg >= 0 ? cgFrequency[cg] : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PathStatistics{paths=%d, score=%d..%d, avgScore=%.1f, avgCgs=%.1f, avgLength=%.1f}",
+                             pathCount, getMinScore(), getMaxScore(), getAverageScore(),
+                             getAverageCgCount(), getAverageLength());
+    }
+}
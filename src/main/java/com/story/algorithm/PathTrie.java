@@ -0,0 +1,202 @@
+package com.story.algorithm;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import com.story.model.*;
+
+// Compact store for complete paths as leaves of a trie of choices.
+// Each trie node only records its parent and the choice that leads to it, so
+// paths that share a prefix share its trie nodes and memory grows with the
+// number of distinct prefixes rather than with the total length of all paths.
+// A StoryPath is only built when a path is read.
+final class PathTrie {
+    private static final int ROOT = 0;
+
+    private final CompiledStoryGraph graph;
+
+    // Trie nodes: parent, choice taken from the parent (-1 at the root, which is the
+    // start node) and the child created most recently
+    private int[] parents;
+    private int[] edges;
+    private int[] lastChildren;
+    private int size;
+
+    // Complete paths in the order they were added: their last trie node and score
+    private int[] leaves;
+    private int[] scores;
+    private int pathCount;
+
+    PathTrie(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.parents = new int[16];
+        this.edges = new int[16];
+        this.lastChildren = new int[16];
+        this.leaves = new int[16];
+        this.scores = new int[16];
+        newNode(-1, -1);
+    }
+
+    // Adds the working path, with its ending already pushed. A search adds paths in
+    // depth-first order, where any prefix shared with an earlier path is also shared
+    // with the path added just before, so only the most recent child is checked.
+    void add(WorkingPath path, int endingNode) {
+        int current = ROOT;
+        for (int i = 0; i < path.getChoiceCount(); i++) {
+            current = child(current, path.getChoice(i));
+        }
+        addLeaf(current, path.getScore(endingNode));
+    }
+
+    // Adds every path of a trie whose paths all come after the ones already here.
+    void append(PathTrie later) {
+        // Parents are created before their children, so one pass in creation order works
+        int[] mapped = new int[later.size];
+        mapped[ROOT] = ROOT;
+        for (int node = 1; node < later.size; node++) {
+            mapped[node] = child(mapped[later.parents[node]], later.edges[node]);
+        }
+        for (int i = 0; i < later.pathCount; i++) {
+            addLeaf(mapped[later.leaves[i]], later.scores[i]);
+        }
+    }
+
+    int getPathCount() {
+        return pathCount;
+    }
+
+    // Number of trie nodes, which is what the store's memory grows with.
+    int getNodeCount() {
+        return size;
+    }
+
+    // The ending node the index-th path finishes at.
+    int getEndingNode(int index) {
+        return nodeOf(leaves[index]);
+    }
+
+    StoryPath getPath(int index) {
+        int leaf = leaves[index];
+        int length = 0;
+        for (int node = leaf; node != ROOT; node = parents[node]) {
+            length++;
+        }
+        int[] pathEdges = new int[length];
+        for (int node = leaf, i = length - 1; node != ROOT; node = parents[node], i--) {
+            pathEdges[i] = edges[node];
+        }
+        return materialize(graph, pathEdges, scores[index]);
+    }
+
+    // Builds the path that takes the given choices from the start node, with its
+    // score already known.
+    static StoryPath materialize(CompiledStoryGraph graph, int[] pathEdges, int score) {
+        int length = pathEdges.length;
+        List<String> nodeSequence = new ArrayList<>(length + 1);
+        List<Choice> choiceSequence = new ArrayList<>(length);
+        long[] cgBits = new long[graph.getCgIndex().wordCount()];
+        int node = graph.getStartIndex();
+        collect(graph, cgBits, node);
+        nodeSequence.add(graph.getNodeId(node));
+        for (int edge : pathEdges) {
+            node = graph.getDestination(edge);
+            collect(graph, cgBits, node);
+            choiceSequence.add(graph.getChoice(edge));
+            nodeSequence.add(graph.getNodeId(node));
+        }
+        return new StoryPath(nodeSequence, choiceSequence, graph.getCgIndex(), cgBits, graph.getEndingType(node),
+                             true, graph.getScoringModel(), score);
+    }
+
+    // Every path in the order it was added, built as it is read.
+    List<StoryPath> asList() {
+        int[] all = new int[pathCount];
+        for (int i = 0; i < pathCount; i++) {
+            all[i] = i;
+        }
+        return new PathList(all);
+    }
+
+    // The paths whose ending node passes the filter, best score first and in the order
+    // they were added among equal scores, built as they are read.
+    List<StoryPath> ranked(IntPredicate endingFilter) {
+        // Sort keys hold the negated score above the index, so ascending order ranks
+        // by score and then by insertion order without boxing
+        long[] keys = new long[pathCount];
+        int count = 0;
+        for (int i = 0; i < pathCount; i++) {
+            if (endingFilter.test(getEndingNode(i))) {
+                keys[count++] = ((long) -scores[i] << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        int[] selected = new int[count];
+        for (int i = 0; i < count; i++) {
+            selected[i] = (int) keys[i];
+        }
+        return new PathList(selected);
+    }
+
+    // Child of parent through edge: the most recent child if it took the same choice,
+    // otherwise a new one.
+    private int child(int parent, int edge) {
+        int last = lastChildren[parent];
+        if (last >= 0 && edges[last] == edge) {
+            return last;
+        }
+        int created = newNode(parent, edge);
+        lastChildren[parent] = created;
+        return created;
+    }
+
+    private int newNode(int parent, int edge) {
+        if (size == parents.length) {
+            parents = Arrays.copyOf(parents, size * 2);
+            edges = Arrays.copyOf(edges, size * 2);
+            lastChildren = Arrays.copyOf(lastChildren, size * 2);
+        }
+        parents[size] = parent;
+        edges[size] = edge;
+        lastChildren[size] = -1;
+        return size++;
+    }
+
+    private void addLeaf(int node, int score) {
+        if (pathCount == leaves.length) {
+            leaves = Arrays.copyOf(leaves, pathCount * 2);
+            scores = Arrays.copyOf(scores, pathCount * 2);
+        }
+        leaves[pathCount] = node;
+        scores[pathCount] = score;
+        pathCount++;
+    }
+
+    private int nodeOf(int trieNode) {
+        return trieNode == ROOT ? graph.getStartIndex() : graph.getDestination(edges[trieNode]);
+    }
+
+    private static void collect(CompiledStoryGraph graph, long[] cgBits, int node) {
+        for (int slot = graph.getCgStart(node); slot < graph.getCgEnd(node); slot++) {
+            CgBits.set(cgBits, graph.getCgAt(slot));
+        }
+    }
+
+    // Read-only view of some of the stored paths, by index.
+    private final class PathList extends AbstractList<StoryPath> implements RandomAccess {
+        private final int[] indices;
+
+        PathList(int[] indices) {
+            this.indices = indices;
+        }
+
+        @Override
+        public StoryPath get(int i) {
+            return getPath(indices[i]);
+        }
+
+        @Override
+        public int size() {
+            return indices.length;
+        }
+    }
+}
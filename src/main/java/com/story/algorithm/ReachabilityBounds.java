@@ -0,0 +1,126 @@
+package com.story.algorithm;
+
+import com.story.model.*;
+
+// Optimistic per-node bounds used to prune the search.
+// For every node this records the CGs that could still be collected on the way
+// to an accepted ending and the best ending bonus still reachable. Both ignore
+// the no-revisit rule, so they never underestimate what a branch can score.
+// Weights, bonuses and the length penalty are never negative, so scoring the
+// nodes ahead as free of penalty keeps the bound optimistic.
+final class ReachabilityBounds {
+    static final int UNREACHABLE = Integer.MIN_VALUE;
+
+    private final CompiledStoryGraph graph;
+    private final boolean[] accepting;
+    private final long[][] reachableCgs;
+    private final int[] bestBonus;
+
+    private ReachabilityBounds(CompiledStoryGraph graph, boolean[] accepting) {
+        int nodeCount = graph.getNodeCount();
+        int words = graph.getCgIndex().wordCount();
+        this.graph = graph;
+        this.accepting = accepting;
+        this.reachableCgs = new long[nodeCount][];
+        this.bestBonus = new int[nodeCount];
+
+        // Nodes grouped by component
+        int componentCount = graph.getComponentCount();
+        int[] memberStart = new int[componentCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            memberStart[graph.getComponent(node) + 1]++;
+        }
+        for (int component = 0; component < componentCount; component++) {
+            memberStart[component + 1] += memberStart[component];
+        }
+        int[] members = new int[nodeCount];
+        int[] next = memberStart.clone();
+        for (int node = 0; node < nodeCount; node++) {
+            members[next[graph.getComponent(node)]++] = node;
+        }
+
+        // Choices only lead to the same or a lower-numbered component, so a single pass
+        // in component order finds every successor outside the component already done.
+        // The nodes of a cyclic component all reach each other and so share their
+        // bounds. The search never continues past an ending, so endings do not inherit
+        // anything from their own choices.
+        for (int component = 0; component < componentCount; component++) {
+            long[] cgs = new long[words];
+            int bonus = UNREACHABLE;
+            for (int i = memberStart[component]; i < memberStart[component + 1]; i++) {
+                int node = members[i];
+                for (int slot = graph.getCgStart(node); slot < graph.getCgEnd(node); slot++) {
+                    CgBits.set(cgs, graph.getCgAt(slot));
+                }
+                if (accepting[node]) {
+                    bonus = Math.max(bonus, graph.getEndingBonus(node));
+                }
+                if (graph.isEnding(node)) {
+                    continue;
+                }
+                for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                    int destination = graph.getDestination(edge);
+                    if (destination >= 0 && graph.getComponent(destination) != component) {
+                        long[] source = reachableCgs[destination];
+                        for (int w = 0; w < words; w++) {
+                            cgs[w] |= source[w];
+                        }
+                        bonus = Math.max(bonus, bestBonus[destination]);
+                    }
+                }
+            }
+            for (int i = memberStart[component]; i < memberStart[component + 1]; i++) {
+                reachableCgs[members[i]] = cgs;
+                bestBonus[members[i]] = bonus;
+            }
+        }
+    }
+
+    // Bounds for paths to endings of the given type, or to any ending when endingType is null.
+    static ReachabilityBounds forEndingType(CompiledStoryGraph graph, String endingType) {
+        boolean[] accepting = new boolean[graph.getNodeCount()];
+        for (int node = 0; node < accepting.length; node++) {
+            accepting[node] = graph.isEnding(node)
+                              && (endingType == null || endingType.equals(graph.getEndingType(node)));
+        }
+        return new ReachabilityBounds(graph, accepting);
+    }
+
+    // Bounds for paths to one specific ending node.
+    static ReachabilityBounds forTarget(CompiledStoryGraph graph, int target) {
+        boolean[] accepting = new boolean[graph.getNodeCount()];
+        if (target >= 0 && graph.isEnding(target)) {
+            accepting[target] = true;
+        }
+        return new ReachabilityBounds(graph, accepting);
+    }
+
+    boolean isAccepting(int node) {
+        return accepting[node];
+    }
+
+    // CGs that can still be collected from node. Callers must not modify the array.
+    long[] getReachableCgs(int node) {
+        return reachableCgs[node];
+    }
+
+    // Largest ending bonus still reachable from node, or UNREACHABLE.
+    int getBestEndingBonus(int node) {
+        return bestBonus[node];
+    }
+
+    boolean canReachAcceptedEnding(int node) {
+        return bestBonus[node] != UNREACHABLE;
+    }
+
+    // Best score any path can reach by continuing into node with the given CGs
+    // already collected, where pathLength counts the nodes up to and including node,
+    // or UNREACHABLE if no accepted ending lies ahead.
+    int upperBound(long[] collectedCgs, int node, int pathLength) {
+        if (bestBonus[node] == UNREACHABLE) {
+            return UNREACHABLE;
+        }
+        return graph.unionCgScore(collectedCgs, reachableCgs[node]) + bestBonus[node]
+               - pathLength * graph.getLengthPenalty();
+    }
+}
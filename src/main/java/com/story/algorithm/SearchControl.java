@@ -0,0 +1,80 @@
+package com.story.algorithm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import com.story.model.*;
+
+// Budgets, cancellation and the incumbent best path of one running search.
+// Engines call tick() once per search step and unwind as soon as it returns true.
+// Shared by all workers of a parallel search, so every field is thread-safe.
+final class SearchControl {
+    // The clock and the token are only checked every this many steps
+    private static final int CHECK_INTERVAL = 64;
+
+    private final boolean timeLimited;
+    private final long deadlineNanos;
+    private final long nodeBudget;
+    private final CancellationToken token;
+    // Ending type the incumbent must have, or null for any
+    private final String acceptedEndingType;
+
+    private final AtomicLong steps = new AtomicLong();
+    private volatile SearchResult.StopReason stopReason;
+    private volatile StoryPath incumbent;
+
+    // A time budget or node budget of 0 means no limit; token may be null.
+    SearchControl(long timeBudgetMillis, long nodeBudget, CancellationToken token, String acceptedEndingType) {
+        this.timeLimited = timeBudgetMillis > 0;
+        this.deadlineNanos = System.nanoTime() + (timeLimited ? timeBudgetMillis * 1_000_000L : 0L);
+        this.nodeBudget = nodeBudget > 0 ? nodeBudget : Long.MAX_VALUE;
+        this.token = token;
+        this.acceptedEndingType = acceptedEndingType;
+    }
+
+    // Counts one search step and returns true if the search must stop.
+    boolean tick() {
+        if (stopReason != null) {
+            return true;
+        }
+        long step = steps.incrementAndGet();
+        if (step > nodeBudget) {
+            stop(SearchResult.StopReason.NODE_BUDGET);
+        } else if (step % CHECK_INTERVAL == 0 || step == 1) {
+            if (token != null && token.isCancelled()) {
+                stop(SearchResult.StopReason.CANCELLED);
+            } else if (timeLimited && System.nanoTime() - deadlineNanos >= 0) {
+                stop(SearchResult.StopReason.TIME_BUDGET);
+            }
+        }
+        return stopReason != null;
+    }
+
+    boolean isStopped() {
+        return stopReason != null;
+    }
+
+    // COMPLETED unless a limit stopped the search.
+    SearchResult.StopReason getStopReason() {
+        SearchResult.StopReason reason = stopReason;
+        return reason != null ? reason : SearchResult.StopReason.COMPLETED;
+    }
+
+    // Records a newly found path if it beats the incumbent. An earlier path wins ties.
+    synchronized void offer(StoryPath path) {
+        if (acceptedEndingType != null && !acceptedEndingType.equals(path.getEndingType())) {
+            return;
+        }
+        if (incumbent == null || path.calculateScore() > incumbent.calculateScore()) {
+            incumbent = path;
+        }
+    }
+
+    StoryPath getIncumbent() {
+        return incumbent;
+    }
+
+    private synchronized void stop(SearchResult.StopReason reason) {
+        if (stopReason == null) {
+            stopReason = reason;
+        }
+    }
+}
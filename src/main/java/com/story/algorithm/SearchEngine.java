@@ -0,0 +1,30 @@
+package com.story.algorithm;
+
+// Search strategies available to StoryPathFinder.
+public enum SearchEngine {
+    // Enumerates every complete path and keeps all of them for analysis.
+    BACKTRACKING,
+    // Backtracking that skips branches whose reachable CGs cannot beat the best
+    // path found so far, or that an earlier partial path reaching the same node
+    // already beats. Only improving paths are kept.
+    BRANCH_AND_BOUND,
+    // Memoized dynamic programming over (node, collected CGs) on the strongly connected
+    // components of the story; only loops need the nodes already on the path in the
+    // state. Only the optimal path is kept.
+    DYNAMIC_PROGRAMMING,
+    // BACKTRACKING split into subtrees and run on a ForkJoinPool. Produces the same
+    // paths, in the same order, as the sequential search.
+    PARALLEL,
+    // Best-first (A*) search over partial paths ordered by collected plus reachable
+    // CGs. Stops at the first complete path, which is proven optimal; only that path
+    // is kept.
+    BEST_FIRST,
+    // Approximate beam search (see BeamSearchPathFinder) with the default width.
+    // Scales to any story size, but the result is not proven optimal.
+    BEAM,
+    // Counts or estimates the paths first, then picks BACKTRACKING for small
+    // searches, DYNAMIC_PROGRAMMING for larger ones whose loops are all small,
+    // BRANCH_AND_BOUND for other larger ones and BEAM when even a bounded search
+    // is out of reach.
+    AUTO
+}
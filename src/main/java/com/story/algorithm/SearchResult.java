@@ -0,0 +1,62 @@
+package com.story.algorithm;
+
+import com.story.model.*;
+
+// Outcome of a search that may have been cut short by a budget or a cancellation.
+// The path is the best one found before the search stopped, or null if none was
+// found; it is only proven optimal when an exact engine ran to completion.
+public final class SearchResult {
+    // Why the search stopped
+    public enum StopReason {
+        COMPLETED,
+        TIME_BUDGET,
+        NODE_BUDGET,
+        CANCELLED
+    }
+
+    private final StoryPath path;
+    private final StopReason stopReason;
+    private final SearchEngine engineUsed;
+    private final int exploredPaths;
+    private final long elapsedMillis;
+
+    SearchResult(StoryPath path, StopReason stopReason, SearchEngine engineUsed, int exploredPaths, long elapsedMillis) {
+        this.path = path;
+        this.stopReason = stopReason;
+        this.engineUsed = engineUsed;
+        this.exploredPaths = exploredPaths;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public StoryPath getPath() {
+        return path;
+    }
+
+    // Beam search may miss the optimum even when it runs to completion.
+    public boolean isProvenOptimal() {
+        return stopReason == StopReason.COMPLETED && engineUsed != SearchEngine.BEAM;
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public SearchEngine getEngineUsed() {
+        return engineUsed;
+    }
+
+    public int getExploredPaths() {
+        return exploredPaths;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchResult{score=%s, provenOptimal=%b, stopReason=%s, engine=%s, explored=%d, elapsed=%dms}",
+                           path != null ? String.valueOf(path.calculateScore()) : "none",
+                           isProvenOptimal(), stopReason, engineUsed, exploredPaths, elapsedMillis);
+    }
+}
@@ -1,248 +1,932 @@
 package com.story.algorithm;
 
+import java.math.BigInteger;
 import java.util.*;
 import com.story.model.*;
 
 // Implements a backtracking algorithm to find optimal paths through a story.
+// The search runs on a CompiledStoryGraph, so the hot loop works on node and
+// choice indices instead of string lookups.
 public class StoryPathFinder {
     private final Story story;
-    private final List<StoryPath> allPaths;
-    private final Map<String, Integer> nodeVisitCount;
+    private final CompiledStoryGraph graph;
+    // Paths the last search kept; a view of storedPaths after an exhaustive search
+    private List<StoryPath> allPaths;
+    // Every path of the last exhaustive search that kept them all, or null
+    private PathTrie storedPaths;
+    private final int[] nodeVisitCount;
     private int exploredPaths;
+    private SearchEngine engine;
+    private SearchEngine engineUsed;
+    private int parallelism;
+    // Number of paths kept overall and per ending type by exhaustive engines, 0 keeps all
+    private int topK;
+    private TopKPathCollector topPaths;
+    // Summary of every complete path the last search found, kept or not
+    private PathStatistics statistics;
+    private int prunedBranches;
+    private int expandedStates;
+    // Anytime limits: 0 means no limit, a null token cannot cancel
+    private long timeBudgetMillis;
+    private long nodeBudget;
+    private CancellationToken cancellationToken;
+    // Limits and incumbent of the current search, null when it is unlimited
+    private volatile SearchControl control;
+    // Answers repeated queries without searching, null when caching is off
+    private PathResultCache resultCache;
+    // Whether searches report their progress and results on the console
+    private boolean verbose;
     
     public StoryPathFinder(Story story) {
-        this.story = story;
+        this(CompiledStoryGraph.compile(story));
+    }
+    
+    // Finds paths that are best under the given scoring model instead of the story's own.
+    public StoryPathFinder(Story story, ScoringModel scoringModel) {
+        this(CompiledStoryGraph.compile(story, scoringModel));
+    }
+    
+    public StoryPathFinder(CompiledStoryGraph graph) {
+        this.story = graph.getStory();
+        this.graph = graph;
         this.allPaths = new ArrayList<>();
-        this.nodeVisitCount = new HashMap<>();
+        this.nodeVisitCount = new int[graph.getNodeCount()];
         this.exploredPaths = 0;
+        this.engine = SearchEngine.BACKTRACKING;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.topK = 0;
+        this.statistics = new PathStatistics(graph);
+        this.verbose = true;
+    }
+    
+    public void setEngine(SearchEngine engine) {
+        this.engine = engine;
+    }
+    
+    public SearchEngine getEngine() {
+        return engine;
+    }
+    
+    // Number of worker threads used by the PARALLEL engine.
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    // Limits exhaustive engines to keeping the best k paths overall and the best k
+    // per ending type instead of every path. 0 keeps every path.
+    public void setTopK(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Top-K limit cannot be negative: " + k);
+        }
+        this.topK = k;
+    }
+    
+    public int getTopK() {
+        return topK;
+    }
+    
+    // Stops every following search after this many milliseconds; 0 removes the limit.
+    public void setTimeBudgetMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Time budget cannot be negative: " + millis);
+        }
+        this.timeBudgetMillis = millis;
+    }
+    
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+    
+    // Stops every following search after this many search steps (explored paths,
+    // or DP states); 0 removes the limit.
+    public void setNodeBudget(long steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Node budget cannot be negative: " + steps);
+        }
+        this.nodeBudget = steps;
+    }
+    
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+    
+    // Token that lets another thread stop the following searches; null to clear.
+    public void setCancellationToken(CancellationToken token) {
+        this.cancellationToken = token;
+    }
+    
+    // Serves findOptimalPath and findOptimalPathToSpecificEnding from the cache when the
+    // same query already ran with the same engine settings on identical story content
+    // and scoring, and stores their completed results in it. Only the few best paths
+    // of a result are stored, so after a hit getAllPaths holds just those, even for an
+    // exhaustive engine. Null turns caching off.
+    public void setResultCache(PathResultCache cache) {
+        this.resultCache = cache;
+    }
+    
+    public PathResultCache getResultCache() {
+        return resultCache;
+    }
+    
+    // Turns the console reports of the following searches on or off. Finders that
+    // answer queries side by side are quiet so their reports do not interleave.
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+    
+    public boolean isVerbose() {
+        return verbose;
+    }
+    
+    // The engine that actually ran the last search, after any fallback.
+    public SearchEngine getEngineUsed() {
+        return engineUsed;
+    }
+    
+    // Exhaustive searches of at most this many steps are run as they are
+    static final long EXHAUSTIVE_STEP_LIMIT = 1_000_000L;
+    // Beyond this many exhaustive steps even a bounded search on a cyclic story is
+    // likely not to finish, so AUTO switches to beam search
+    static final long BOUNDED_STEP_LIMIT = 1_000_000_000L;
+    // Dynamic programming remembers every simple path through a loop, so AUTO only
+    // uses it when no strongly connected component has more nodes than this
+    static final int DP_CYCLE_LIMIT = 16;
+    // Best paths a cached result keeps overall and for its query: as many as any report lists
+    static final int CACHED_PATH_LIMIT = 5;
+    
+    // Counts the complete paths and exhaustive search steps for reaching any ending,
+    // exactly on acyclic stories and by sampling otherwise.
+    public PathCountEstimate estimatePathCount() {
+        return PathCounter.count(graph, -1);
+    }
+    
+    // Same as estimatePathCount, for paths to one ending node.
+    public PathCountEstimate estimatePathCount(String endingNodeId) {
+        return PathCounter.count(graph, endingIndex(endingNodeId));
+    }
+    
+    private SearchEngine resolveEngine(int target) {
+        if (engine == SearchEngine.AUTO) {
+            return selectEngine(target);
+        }
+        return engine;
+    }
+    
+    // Picks an engine from the size of the exhaustive search and reports the expected cost.
+    private SearchEngine selectEngine(int target) {
+        PathCountEstimate estimate = PathCounter.count(graph, target);
+        BigInteger steps = estimate.getSearchSteps();
+        SearchEngine selected;
+        if (steps.compareTo(BigInteger.valueOf(EXHAUSTIVE_STEP_LIMIT)) <= 0) {
+            selected = SearchEngine.BACKTRACKING;
+        } else if (graph.getLargestCyclicComponentSize() <= DP_CYCLE_LIMIT) {
+            selected = SearchEngine.DYNAMIC_PROGRAMMING;
+        } else if (steps.compareTo(BigInteger.valueOf(BOUNDED_STEP_LIMIT)) <= 0) {
+            selected = SearchEngine.BRANCH_AND_BOUND;
+        } else {
+            selected = SearchEngine.BEAM;
+        }
+        
+        String approx = estimate.isExact() ? "" : "~";
+        log("Path analysis: " + approx + estimate.getCompletePaths() + " complete paths, "
+          + approx + steps + " steps for an exhaustive search"
+          + (estimate.isExact() ? " (exact)" : " (estimated from " + estimate.getSamples() + " samples)"));
+        log("Selected engine: " + selected);
+        return selected;
+    }
+    
+    private static String describe(SearchEngine engine) {
+        switch (engine) {
+            case BRANCH_AND_BOUND:
+                return "branch-and-bound";
+            case DYNAMIC_PROGRAMMING:
+                return "dynamic programming";
+            case PARALLEL:
+                return "parallel backtracking";
+            case BEST_FIRST:
+                return "best-first (A*)";
+            case BEAM:
+                return "beam";
+            default:
+                return "backtracking";
+        }
+    }
+    
+    // Clears the results of the previous search and sets up the limits for the next.
+    // Paths of any other ending type do not count as the incumbent when one is given.
+    private void startSearch(String acceptedEndingType) {
+        allPaths = new ArrayList<>();
+        storedPaths = null;
+        Arrays.fill(nodeVisitCount, 0);
+        exploredPaths = 0;
+        prunedBranches = 0;
+        expandedStates = 0;
+        topPaths = null;
+        statistics = new PathStatistics(graph);
+        boolean limited = timeBudgetMillis > 0 || nodeBudget > 0 || cancellationToken != null;
+        control = limited ? new SearchControl(timeBudgetMillis, nodeBudget, cancellationToken, acceptedEndingType) : null;
+    }
+    
+    private boolean isStopped() {
+        return control != null && control.isStopped();
+    }
+    
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+    
+    private void printStopNotice() {
+        if (isStopped()) {
+            log("\u001B[33m" + "Search stopped early (" + control.getStopReason()
+              + "), results are the best found so far." + "\u001B[0m");
+        }
     }
     
     public StoryPath findOptimalPath() {
         return findOptimalPath(null);
     }
     
+    // Anytime variant of findOptimalPath: runs within the configured time budget, node
+    // budget and cancellation token and reports whether the path is proven optimal.
+    public SearchResult findOptimalPathWithinBudget(String preferredEndingType) {
+        long started = System.nanoTime();
+        StoryPath path = findOptimalPath(preferredEndingType);
+        return buildResult(path, started);
+    }
+    
+    // Anytime variant of findOptimalPathToSpecificEnding.
+    public SearchResult findOptimalPathToSpecificEndingWithinBudget(String targetEndingNodeId) {
+        long started = System.nanoTime();
+        StoryPath path = findOptimalPathToSpecificEnding(targetEndingNodeId);
+        return buildResult(path, started);
+    }
+    
+    private SearchResult buildResult(StoryPath path, long started) {
+        SearchResult.StopReason reason = control != null ? control.getStopReason() : SearchResult.StopReason.COMPLETED;
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000L;
+        return new SearchResult(path, reason, engineUsed, exploredPaths, elapsedMillis);
+    }
+    
+    // Best path found so far by the running search, safe to call from another thread.
+    // Only tracked while a time budget, node budget or cancellation token is set.
+    public StoryPath getCurrentBestPath() {
+        SearchControl current = control;
+        return current != null ? current.getIncumbent() : null;
+    }
+    
     // Finds the optimal path for a specific ending type
     public StoryPath findOptimalPath(String preferredEndingType) {
-        allPaths.clear();
-        nodeVisitCount.clear();
-        exploredPaths = 0;
+        startSearch(preferredEndingType);
+        String cacheKey = cacheKey("optimal", preferredEndingType);
         
-        System.out.println("Starting backtracking search for optimal path...");
-        if (preferredEndingType != null) {
-            System.out.println("Preferred ending type: " + preferredEndingType);
+        if (restoreCachedResult(cacheKey)) {
+            if (preferredEndingType != null) {
+                log("Preferred ending type: " + preferredEndingType);
+            }
+        } else {
+            engineUsed = resolveEngine(-1);
+            
+            log("Starting " + describe(engineUsed) + " search for optimal path...");
+            if (preferredEndingType != null) {
+                log("Preferred ending type: " + preferredEndingType);
+            }
+            
+            // Start from the initial node
+            if (engineUsed == SearchEngine.BACKTRACKING || engineUsed == SearchEngine.PARALLEL) {
+                enumerate(-1);
+            } else {
+                optimize(ReachabilityBounds.forEndingType(graph, preferredEndingType));
+                if (allPaths.isEmpty() && preferredEndingType != null && !isStopped()) {
+                    // No path reaches the preferred type, so search all endings for the fallback
+                    optimize(ReachabilityBounds.forEndingType(graph, null));
+                }
+                countRetainedPaths();
+            }
+            
+            log("Backtracking complete. Explored " + exploredPaths + " paths.");
+            printStopNotice();
+            storeCachedResult(cacheKey, preferredEndingType != null ? rankPathsOfType(preferredEndingType) : null);
         }
-        
-        // Start from the initial node
-        StoryPath initialPath = new StoryPath();
-        backtrack(story.getStartNodeId(), initialPath, new HashSet<>());
-        
-        System.out.println("Backtracking complete. Explored " + exploredPaths + " paths.");
-        System.out.println("Found " + allPaths.size() + " complete paths.");
+        log("Found " + statistics.getPathCount() + " complete paths.");
         
         // Find the best path
         return selectBestPath(preferredEndingType);
     }
     
 
-    private void backtrack(String currentNodeId, StoryPath currentPath, Set<String> visitedInPath) {
-        exploredPaths++;
-        StoryNode currentNode = story.getNode(currentNodeId);
-        if (currentNode == null) {
-            return;
+    // Runs one of the exhaustive engines, collecting every path that ends at target
+    // (or at any ending when target is -1).
+    private void enumerate(int target) {
+        enumerate(target, topK > 0 ? new TopKPathCollector(graph, topK) : new AllPathsCollector(graph));
+    }
+    
+    // Returns the collector holding the results; the parallel engine fills fresh
+    // copies of the given one.
+    private PathCollector enumerate(int target, PathCollector collector) {
+        if (engineUsed == SearchEngine.PARALLEL) {
+            ParallelPathSearch search = new ParallelPathSearch(graph, target, parallelism, collector);
+            search.setControl(control);
+            ParallelPathSearch.Segment result = search.run();
+            collect(result.getCollector(), result.getNodeVisitCount(), result.getExploredPaths());
+            return result.getCollector();
         }
-        
-        nodeVisitCount.put(currentNodeId, nodeVisitCount.getOrDefault(currentNodeId, 0) + 1);
-        
-        StoryPath extendedPath = currentPath.extend(currentNodeId, null, currentNode.getCgs());
-        
-        if (currentNode.isEnding()) {
-            StoryPath completePath = extendedPath.complete(currentNode.getEndingType());
-            allPaths.add(completePath);
-            
-            if (allPaths.size() % 10 == 0) {
-                System.out.println("Found " + allPaths.size() + " complete paths so far...");
+        BacktrackingSearch search = new BacktrackingSearch(graph, target, collector);
+        search.setReportProgress(verbose);
+        search.setControl(control);
+        search.run(graph.getStartIndex());
+        collect(search.getCollector(), search.getNodeVisitCount(), search.getExploredPaths());
+        return search.getCollector();
+    }
+    
+    private void collect(PathCollector collector, int[] visits, int explored) {
+        if (collector instanceof TopKPathCollector) {
+            topPaths = (TopKPathCollector) collector;
+            allPaths.addAll(topPaths.getTopPaths());
+        } else if (collector instanceof BestPerEndingCollector) {
+            allPaths.addAll(((BestPerEndingCollector) collector).getBestPaths().values());
+        } else {
+            storedPaths = ((AllPathsCollector) collector).getPaths();
+            allPaths = storedPaths.asList();
+        }
+        statistics.merge(collector.getStatistics());
+        exploredPaths += explored;
+        addVisits(visits);
+    }
+    
+    // Adds per-node visit counts from an engine; null means no node was visited.
+    private void addVisits(int[] visits) {
+        if (visits != null) {
+            for (int node = 0; node < visits.length; node++) {
+                nodeVisitCount[node] += visits[node];
             }
-            return;
         }
-        
-        List<Choice> choices = currentNode.getChoices();
-        if (choices.isEmpty()) {
+    }
+    
+    // Single-best engines keep every path they report, so the statistics come from allPaths.
+    private void countRetainedPaths() {
+        statistics = new PathStatistics(graph);
+        for (StoryPath path : allPaths) {
+            statistics.add(path);
+        }
+    }
+    
+    // Runs one of the single-best engines; allPaths only receives the improving paths.
+    private void optimize(ReachabilityBounds bounds) {
+        if (engineUsed == SearchEngine.DYNAMIC_PROGRAMMING) {
+            DagPathOptimizer optimizer = new DagPathOptimizer(graph, bounds);
+            optimizer.setControl(control);
+            StoryPath best = optimizer.findOptimalPath();
+            exploredPaths += optimizer.getStatesEvaluated();
+            addVisits(optimizer.getStateCounts());
+            if (best != null) {
+                allPaths.add(best);
+            }
+        } else if (engineUsed == SearchEngine.BEST_FIRST) {
+            BestFirstSearch search = new BestFirstSearch(graph, bounds);
+            search.setControl(control);
+            StoryPath best = search.findOptimalPath();
+            exploredPaths += search.getGeneratedStates();
+            expandedStates += search.getExpandedStates();
+            addVisits(search.getNodeVisitCount());
+            if (best != null) {
+                allPaths.add(best);
+            }
+        } else if (engineUsed == SearchEngine.BEAM) {
+            BeamSearchPathFinder beam = new BeamSearchPathFinder(graph);
+            beam.setControl(control);
+            StoryPath best = beam.search(bounds);
+            exploredPaths += beam.getExpandedStates();
+            if (best != null) {
+                allPaths.add(best);
+            }
+        } else {
+            boundedSearch(bounds);
+        }
+    }
+    
+    private void boundedSearch(ReachabilityBounds bounds) {
+        BranchAndBoundSearch search = new BranchAndBoundSearch(graph, bounds);
+        search.setControl(control);
+        search.run();
+        allPaths.addAll(search.getImprovements());
+        exploredPaths += search.getExploredPaths();
+        prunedBranches += search.getPrunedBranches() + search.getDominatedPaths();
+        addVisits(search.getNodeVisitCount());
+    }
+    
+    // Cache key of a query under the current engine settings. Parallelism and budgets
+    // are left out: they do not change a completed result.
+    private String cacheKey(String query, String argument) {
+        return query + " " + (argument == null ? "*" : "=" + argument) + " " + engine + " " + topK;
+    }
+    
+    // Loads the cached result of the query in place of a search; false on a miss.
+    private boolean restoreCachedResult(String cacheKey) {
+        PathResultCache.Entry cached = resultCache != null ? resultCache.get(graph, cacheKey, this::log) : null;
+        if (cached == null) {
+            return false;
+        }
+        engineUsed = cached.engineUsed;
+        exploredPaths = cached.exploredPaths;
+        prunedBranches = cached.prunedBranches;
+        expandedStates = cached.expandedStates;
+        addVisits(cached.nodeVisitCount);
+        statistics = cached.statistics;
+        allPaths = new ArrayList<>(cached.paths);
+        log("Reusing the cached result of an earlier " + describe(engineUsed)
+          + " search on this story (explored " + exploredPaths + " paths).");
+        return true;
+    }
+    
+    // Caches a completed search: its counters, statistics, the best paths overall and
+    // the best of the query's candidates, when it has candidates of its own. Together
+    // they rank exactly as the full results do for every report, since each list is a
+    // prefix of the complete ranking. A top-K search ranks per ending type apart from
+    // its overall list, which one list cannot reproduce, so it is not cached.
+    private void storeCachedResult(String cacheKey, List<StoryPath> candidates) {
+        if (resultCache == null || isStopped() || topPaths != null) {
             return;
         }
-
-        for (Choice choice : choices) {
-            String nextNodeId = choice.getDestination();
-            
-            if (!visitedInPath.contains(nextNodeId)) {
-                Set<String> newVisited = new HashSet<>(visitedInPath);
-                newVisited.add(currentNodeId);
-                
-                List<Choice> newChoices = new ArrayList<>(extendedPath.getChoiceSequence());
-                newChoices.add(choice);
-                StoryPath pathWithChoice = new StoryPath(extendedPath.getNodeSequence(), newChoices, extendedPath.getCollectedCgs(), null, false);
-                backtrack(nextNodeId, pathWithChoice, newVisited);
+        List<StoryPath> kept = new ArrayList<>();
+        addBestPaths(kept, rankPaths(node -> true));
+        if (candidates != null) {
+            addBestPaths(kept, candidates);
+        }
+        resultCache.put(graph, cacheKey, new PathResultCache.Entry(engineUsed, exploredPaths, prunedBranches, expandedStates,
+                                                                   nodeVisitCount.clone(), statistics, kept), this::log);
+    }
+    
+    private static void addBestPaths(List<StoryPath> kept, List<StoryPath> ranked) {
+        for (StoryPath path : ranked.subList(0, Math.min(CACHED_PATH_LIMIT, ranked.size()))) {
+            boolean seen = kept.stream().anyMatch(other -> other.getNodeSequence().equals(path.getNodeSequence())
+                                                           && other.getChoiceSequence().equals(path.getChoiceSequence()));
+            if (!seen) {
+                kept.add(path);
             }
         }
     }
     
-
     private StoryPath selectBestPath(String preferredEndingType) {
         if (allPaths.isEmpty()) {
             return null;
         }
-        List<StoryPath> candidatePaths = new ArrayList<>(allPaths);
+        List<StoryPath> candidatePaths = rankPaths(node -> true);
+        long candidateCount = statistics.getPathCount();
         if (preferredEndingType != null) {
-            candidatePaths = allPaths.stream()
-                                   .filter(path -> preferredEndingType.equals(path.getEndingType()))
-                                   .collect(java.util.stream.Collectors.toList());
+            List<StoryPath> preferredPaths = rankPathsOfType(preferredEndingType);
+            candidateCount = statistics.getEndingTypeCount(preferredEndingType);
             
-            if (candidatePaths.isEmpty()) {
-                System.out.println("No paths found with ending type: " + preferredEndingType);
-                System.out.println("Falling back to all paths.");
-                candidatePaths = new ArrayList<>(allPaths);
+            if (preferredPaths.isEmpty()) {
+                log("No paths found with ending type: " + preferredEndingType);
+                log("Falling back to all paths.");
+                candidateCount = statistics.getPathCount();
+            } else {
+                candidatePaths = preferredPaths;
             }
         }
         
-        candidatePaths.sort((a, b) -> Integer.compare(b.calculateScore(), a.calculateScore()));
         StoryPath bestPath = candidatePaths.get(0);        
-        printPathStatistics(bestPath, candidatePaths);
+        printPathStatistics(bestPath, candidatePaths, candidateCount);
         return bestPath;
     }
     
-    private void printPathStatistics(StoryPath bestPath, List<StoryPath> candidatePaths) {
-        System.out.println("\u001B[44m"+"\n============== PATH FINDING RESULTS =============="+"\u001B[0m");
-        System.out.println("Best Path Found:");
-        System.out.println("  - Score: " + bestPath.calculateScore());
-        System.out.println("  - CGs Collected: " + bestPath.getCgCount() + "/" + story.getTotalCgCount());
-        System.out.println("  - Path Length: " + bestPath.getPathLength() + " nodes");
-        System.out.println("  - Ending Type: " + bestPath.getEndingType());
-        System.out.println("  - Nodes Visited: " + bestPath.getNodeSequence());
-        
-        System.out.println("\nCGs Collected:");
+    private void printPathStatistics(StoryPath bestPath, List<StoryPath> candidatePaths, long candidateCount) {
+        log("\u001B[44m"+"\n============== PATH FINDING RESULTS =============="+"\u001B[0m");
+        log("Best Path Found:");
+        log("  - Score: " + bestPath.calculateScore());
+        log("  - CGs Collected: " + bestPath.getCgCount() + "/" + story.getTotalCgCount());
+        log("  - Path Length: " + bestPath.getPathLength() + " nodes");
+        log("  - Ending Type: " + bestPath.getEndingType());
+        log("  - Nodes Visited: " + bestPath.getNodeSequence());
+        
+        log("\nCGs Collected:");
         bestPath.getCollectedCgs().forEach(cg -> 
-            System.out.println("  - " + cg + ": " + story.getCgDescription(cg))
+            log("  - " + cg + ": " + story.getCgDescription(cg))
         );
         
-        System.out.println("\nChoice Sequence:");
+        log("\nChoice Sequence:");
         List<Choice> choices = bestPath.getChoiceSequence();
         for (int i = 0; i < choices.size(); i++) {
             Choice choice = choices.get(i);
-            System.out.println("  " + (i + 1) + ". " + choice.getText() + " → " + choice.getDestination());
+            log("  " + (i + 1) + ". " + choice.getText() + " → " + choice.getDestination());
         }
         
-        System.out.println("\u001B[44m"+"\n============== SEARCH STATISTICS ==============="+"\u001B[0m");
-        System.out.println("Total paths explored: " + exploredPaths);
-        System.out.println("Complete paths found: " + allPaths.size());
-        System.out.println("Candidate paths: " + candidatePaths.size());
+        log("\u001B[44m"+"\n============== SEARCH STATISTICS ==============="+"\u001B[0m");
+        log("Total paths explored: " + exploredPaths);
+        printPruningStatistics();
+        log("Complete paths found: " + statistics.getPathCount());
+        log("Candidate paths: " + candidateCount);
+        if (topPaths != null) {
+            log("Paths retained: best " + topPaths.getLimit() + " overall and per ending type");
+        }
         
-        System.out.println("\nTop 5 Paths by Score:");
+        log("\nTop 5 Paths by Score:");
         for (int i = 0; i < Math.min(5, candidatePaths.size()); i++) {
             StoryPath path = candidatePaths.get(i);
-            System.out.println("  " + (i + 1) + ". Score: " + path.calculateScore() + 
-                             ", CGs: " + path.getCgCount() + 
-                             ", Ending: " + path.getEndingType());
+            log("  " + (i + 1) + ". Score: " + path.calculateScore() + 
+              ", CGs: " + path.getCgCount() + 
+              ", Ending: " + path.getEndingType());
         }
         
-        Map<String, Long> endingCounts = allPaths.stream()
-                                                .collect(java.util.stream.Collectors.groupingBy(
-                                                    StoryPath::getEndingType,
-                                                    java.util.stream.Collectors.counting()
-                                                ));
-        
-        System.out.println("\nEnding Type Distribution:");
-        endingCounts.forEach((type, count) -> 
-            System.out.println("  - " + type + ": " + count + " paths")
+        log("\nEnding Type Distribution:");
+        statistics.getEndingTypeCounts().forEach((type, count) -> 
+            log("  - " + type + ": " + count + " paths")
         );
     }
     
+    private void printPruningStatistics() {
+        log("Search engine: " + engineUsed);
+        if (engineUsed == SearchEngine.DYNAMIC_PROGRAMMING) {
+            log("(explored count is the number of memoized states evaluated)");
+        }
+        if (engineUsed == SearchEngine.PARALLEL) {
+            log("Parallelism: " + parallelism + " threads");
+        }
+        if (engineUsed == SearchEngine.BEST_FIRST) {
+            log("(explored count is the number of partial paths queued)");
+            log("Partial paths expanded: " + expandedStates);
+        }
+        if (engineUsed == SearchEngine.BEAM) {
+            log("(explored count is the number of partial paths expanded; the result is approximate)");
+        }
+        if (engineUsed == SearchEngine.BRANCH_AND_BOUND && exploredPaths > 0) {
+            log("Branches pruned: " + prunedBranches + 
+              String.format(" (%.1f%% of explored)", prunedBranches * 100.0 / exploredPaths));
+        }
+    }
+    
+    // With BRANCH_AND_BOUND this only holds the paths that improved on the best score,
+    // with DYNAMIC_PROGRAMMING, BEST_FIRST and BEAM only the best path found, and with
+    // a top-K limit only the best K paths, best first. Paths an exhaustive search kept
+    // are stored compactly and all built here, so getBestPaths is cheaper for a few.
+    // A result served from the result cache holds only the cached best paths, at most
+    // CACHED_PATH_LIMIT overall plus as many of the query's candidates, whatever the
+    // engine; turn the cache off when every path is needed.
     public List<StoryPath> getAllPaths() {
         return new ArrayList<>(allPaths);
     }
 
     
     public List<StoryPath> getPathsByEndingType(String endingType) {
-        List<StoryPath> filtered = allPaths.stream()
-                      .filter(path -> endingType.equals(path.getEndingType()))
-                      .collect(java.util.stream.Collectors.toList());
-        filtered.sort((a, b) -> Integer.compare(b.calculateScore(), a.calculateScore()));
-        return filtered;
+        return new ArrayList<>(rankPathsOfType(endingType));
+    }
+    
+    // The kept paths of one ending type, best first; a top-K search ranked them per type already.
+    private List<StoryPath> rankPathsOfType(String endingType) {
+        if (topPaths != null) {
+            return topPaths.getTopPaths(endingType);
+        }
+        return rankPaths(node -> endingType.equals(graph.getEndingType(node)));
+    }
+    
+    // The best paths of the last search, best first, at most limit of them. Only these
+    // paths are built, however many the search kept.
+    public List<StoryPath> getBestPaths(int limit) {
+        List<StoryPath> ranked = rankPaths(node -> true);
+        return new ArrayList<>(ranked.subList(0, Math.min(limit, ranked.size())));
+    }
+    
+    // Kept paths that finish at an ending node accepted by the filter, best score first
+    // and in discovery order among equal scores. Paths in the trie are built as read.
+    private List<StoryPath> rankPaths(java.util.function.IntPredicate endingFilter) {
+        if (storedPaths != null) {
+            return storedPaths.ranked(endingFilter);
+        }
+        List<StoryPath> ranked = allPaths.stream()
+                                         .filter(path -> endingFilter.test(graph.getNodeIndex(path.getCurrentNode())))
+                                         .collect(java.util.stream.Collectors.toList());
+        ranked.sort((a, b) -> Integer.compare(b.calculateScore(), a.calculateScore()));
+        return ranked;
     }
     
+    // Lazily enumerates every complete path in search order. Paths are found as the
+    // stream is consumed, so limit/anyMatch stop the search early. Each call starts
+    // an independent search and does not touch the results of findOptimalPath.
+    public java.util.stream.Stream<StoryPath> streamPaths() {
+        return java.util.stream.StreamSupport.stream(new PathSpliterator(graph, -1), false);
+    }
+
+    // Same as streamPaths, restricted to paths that finish at the given ending node.
+    public java.util.stream.Stream<StoryPath> streamPaths(String endingNodeId) {
+        return java.util.stream.StreamSupport.stream(new PathSpliterator(graph, endingIndex(endingNodeId)), false);
+    }
+
+    public Iterator<StoryPath> pathIterator() {
+        return Spliterators.iterator(new PathSpliterator(graph, -1));
+    }
+
+    public Iterator<StoryPath> pathIterator(String endingNodeId) {
+        return Spliterators.iterator(new PathSpliterator(graph, endingIndex(endingNodeId)));
+    }
+
+    private int endingIndex(String endingNodeId) {
+        int node = graph.getNodeIndex(endingNodeId);
+        if (node < 0 || !graph.isEnding(node)) {
+            throw new IllegalArgumentException("Not an ending node: " + endingNodeId);
+        }
+        return node;
+    }
+
     public Map<String, Integer> getNodeVisitCount() {
-        return new HashMap<>(nodeVisitCount);
+        Map<String, Integer> visitCounts = new HashMap<>();
+        for (int node = 0; node < nodeVisitCount.length; node++) {
+            if (nodeVisitCount[node] > 0) {
+                visitCounts.put(graph.getNodeId(node), nodeVisitCount[node]);
+            }
+        }
+        return visitCounts;
+    }
+    
+    public CompiledStoryGraph getGraph() {
+        return graph;
     }
 
     
     public int getExploredPathsCount() {
         return exploredPaths;
     }
+    
+    // Number of complete paths the last search found, including any it did not keep.
+    public long getCompletePathCount() {
+        return statistics.getPathCount();
+    }
+    
+    // Score, CG, length, ending and CG frequency summary of the complete paths the last
+    // search found. Exhaustive engines count every path, even with setTopK; single-best
+    // engines only count the improving paths they report.
+    public PathStatistics getStatistics() {
+        return statistics;
+    }
+    
+    // Number of choices skipped in the last branch-and-bound search, by the bounds or
+    // because an earlier partial path at the same node dominated the one taking them.
+    public int getPrunedBranchCount() {
+        return prunedBranches;
+    }
 
-    public StoryPath findOptimalPathToSpecificEnding(String targetEndingNodeId) {
-        allPaths.clear();
-        nodeVisitCount.clear();
-        exploredPaths = 0;
-        
-        StoryNode targetNode = story.getNode(targetEndingNodeId);
-        if (targetNode == null || !targetNode.isEnding()) {
-            System.out.println("\u001B[31m"+"Target node not found or not an ending: " + targetEndingNodeId+ "\u001B[0m");
-            return null;
+    // Finds the best path to every reachable ending in a single traversal, keyed by
+    // ending node id in id order. Unreachable endings are left out. The bounded
+    // engines optimize one objective at a time, so this runs an exhaustive search:
+    // parallel when PARALLEL is selected, sequential backtracking otherwise. Only with
+    // AUTO, on a story too large to enumerate, each ending gets a search of its own
+    // with the engine AUTO picks instead.
+    public Map<String, StoryPath> findOptimalPathsForAllEndings() {
+        startSearch(null);
+        if (engine == SearchEngine.AUTO) {
+            engineUsed = selectEngine(-1);
+            if (engineUsed != SearchEngine.BACKTRACKING) {
+                return optimizeEveryEnding();
+            }
+        } else {
+            engineUsed = engine == SearchEngine.PARALLEL ? SearchEngine.PARALLEL : SearchEngine.BACKTRACKING;
         }
         
-        System.out.println("Starting backtracking search for specific ending...");
-        System.out.println("Target ending: " + targetNode.getTitle());
-        
-        StoryPath initialPath = new StoryPath();
-        backtrackToSpecificEnding(story.getStartNodeId(), initialPath, new HashSet<>(), targetEndingNodeId);
+        log("Starting " + describe(engineUsed) + " search for the best path to every ending...");
+        PathCollector collector = enumerate(-1, new BestPerEndingCollector(graph));
+        Map<String, StoryPath> bestPaths = ((BestPerEndingCollector) collector).getBestPaths();
         
-        System.out.println("Backtracking complete. Explored " + exploredPaths + " paths.");
-        System.out.println("Found " + allPaths.size() + " paths to target ending.");
-        
-        return selectBestPathToSpecificEnding(targetEndingNodeId);
+        log("Backtracking complete. Explored " + exploredPaths + " paths.");
+        printStopNotice();
+        log("Found " + statistics.getPathCount() + " complete paths reaching " + bestPaths.size()
+          + " of " + story.getEndingNodes().size() + " endings.");
+        return bestPaths;
     }
-    
-    private void backtrackToSpecificEnding(String currentNodeId, StoryPath currentPath, Set<String> visitedInPath, String targetEndingNodeId) {
-        exploredPaths++;
-        
-        StoryNode currentNode = story.getNode(currentNodeId);
-        if (currentNode == null) {
-            return;
+
+    // One single-best search per ending, confined to the nodes that can reach it; the
+    // last path each adds to allPaths is that ending's best.
+    private Map<String, StoryPath> optimizeEveryEnding() {
+        log("Starting " + describe(engineUsed) + " searches for the best path to every ending...");
+        Map<String, StoryPath> bestPaths = new LinkedHashMap<>();
+        for (int node = 0; node < graph.getNodeCount() && !isStopped(); node++) {
+            if (!graph.isEnding(node)) {
+                continue;
+            }
+            int found = allPaths.size();
+            optimize(ReachabilityBounds.forTarget(graph, node));
+            if (allPaths.size() > found) {
+                bestPaths.put(graph.getNodeId(node), allPaths.get(allPaths.size() - 1));
+            }
         }
-        
-        nodeVisitCount.put(currentNodeId, nodeVisitCount.getOrDefault(currentNodeId, 0) + 1);        
-        StoryPath extendedPath = currentPath.extend(currentNodeId, null, currentNode.getCgs());
-        
-        if (currentNodeId.equals(targetEndingNodeId) && currentNode.isEnding()) {
-            StoryPath completePath = extendedPath.complete(currentNode.getEndingType());
-            allPaths.add(completePath);
-            
-            if (allPaths.size() % 5 == 0) {
-                System.out.println("Found " + allPaths.size() + " paths to target ending so far...");
+        allPaths = new ArrayList<>(bestPaths.values());
+        countRetainedPaths();
+
+        log("Searches complete. Explored " + exploredPaths + " paths.");
+        printStopNotice();
+        log("Best paths reach " + bestPaths.size() + " of " + story.getEndingNodes().size() + " endings.");
+        return bestPaths;
+    }
+
+    // Same as findOptimalPathsForAllEndings after an edit, given its results on the
+    // previous version of the story. Only the endings the edit can affect are searched
+    // again; see findAffectedEndings. Both versions must be scored alike.
+    public Map<String, StoryPath> updateOptimalPathsForAllEndings(Map<String, StoryPath> previousPaths, Story previousStory) {
+        return updateOptimalPathsForAllEndings(previousPaths, story.getChangedNodeIds(previousStory));
+    }
+
+    // Same as above with the changed node ids already known: every node added, removed
+    // or edited since previousPaths were found.
+    public Map<String, StoryPath> updateOptimalPathsForAllEndings(Map<String, StoryPath> previousPaths,
+                                                                  Set<String> changedNodeIds) {
+        startSearch(null);
+        engineUsed = SearchEngine.BRANCH_AND_BOUND;
+        Set<String> affected = findAffectedEndings(previousPaths, changedNodeIds);
+        List<StoryNode> endings = story.getEndingNodes();
+        log("Re-optimizing " + affected.size() + " of " + endings.size() + " endings affected by "
+          + changedNodeIds.size() + " changed nodes; reusing the others.");
+
+        // Each affected ending gets its own bounded search, confined to the nodes that
+        // can reach it; the last improvement is the best path, as in the full search
+        Map<String, StoryPath> bestPaths = new LinkedHashMap<>();
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            String nodeId = graph.getNodeId(node);
+            if (!graph.isEnding(node)) {
+                continue;
+            }
+            if (!affected.contains(nodeId)) {
+                StoryPath previous = previousPaths.get(nodeId);
+                if (previous != null) {
+                    bestPaths.put(nodeId, previous);
+                }
+                continue;
+            }
+            if (isStopped()) {
+                continue;
+            }
+            BranchAndBoundSearch search = new BranchAndBoundSearch(graph, ReachabilityBounds.forTarget(graph, node));
+            search.setControl(control);
+            search.run();
+            exploredPaths += search.getExploredPaths();
+            prunedBranches += search.getPrunedBranches() + search.getDominatedPaths();
+            addVisits(search.getNodeVisitCount());
+            List<StoryPath> improvements = search.getImprovements();
+            if (!improvements.isEmpty()) {
+                bestPaths.put(nodeId, improvements.get(improvements.size() - 1));
             }
-            return;
         }
-        
-        if (currentNode.isEnding()) {
-            return;
+        allPaths.addAll(bestPaths.values());
+        countRetainedPaths();
+
+        log("Re-optimization complete. Explored " + exploredPaths + " paths.");
+        printStopNotice();
+        log("Best paths reach " + bestPaths.size() + " of " + endings.size() + " endings.");
+        return bestPaths;
+    }
+
+    // Ids of the endings of the edited story, in id order, whose best path an edit of
+    // changedNodeIds can change: those whose previous best path went through a changed
+    // node, and those a changed node can now reach. Any other ending keeps exactly its
+    // previous paths, since each of them avoids every changed node, so its previous
+    // best path stands.
+    public Set<String> findAffectedEndings(Map<String, StoryPath> previousPaths, Set<String> changedNodeIds) {
+        Set<String> affected = new TreeSet<>();
+        for (Map.Entry<String, StoryPath> previous : previousPaths.entrySet()) {
+            int ending = graph.getNodeIndex(previous.getKey());
+            if (ending >= 0 && graph.isEnding(ending)
+                && previous.getValue().getNodeSequence().stream().anyMatch(changedNodeIds::contains)) {
+                affected.add(previous.getKey());
+            }
+        }
+
+        // Forward reachability in the edited story from every changed node that is still in it
+        boolean[] reached = new boolean[graph.getNodeCount()];
+        Deque<Integer> worklist = new ArrayDeque<>();
+        for (String nodeId : changedNodeIds) {
+            int node = graph.getNodeIndex(nodeId);
+            if (node >= 0 && !reached[node]) {
+                reached[node] = true;
+                worklist.add(node);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            int node = worklist.poll();
+            if (graph.isEnding(node)) {
+                affected.add(graph.getNodeId(node));
+                continue;
+            }
+            for (int edge = graph.getChoiceStart(node); edge < graph.getChoiceEnd(node); edge++) {
+                int next = graph.getDestination(edge);
+                if (next >= 0 && !reached[next]) {
+                    reached[next] = true;
+                    worklist.add(next);
+                }
+            }
+        }
+        return affected;
+    }
+
+    public List<StoryPath> findParetoOptimalPaths() {
+        return findParetoOptimalPaths(null);
+    }
+
+    // Finds every path that is Pareto-optimal over the number of CGs, the path length
+    // and the ending, ranked by its ending bonus, among paths to endings of the given
+    // type (or any ending when endingType is null). Most CGs first, then shortest,
+    // then best ending. Always runs the dedicated multi-objective search; the
+    // configured engine only decides single-score queries.
+    public List<StoryPath> findParetoOptimalPaths(String endingType) {
+        startSearch(null);
+        log("Starting Pareto search over CGs, path length and ending...");
+        if (endingType != null) {
+            log("Ending type: " + endingType);
         }
+
+        ParetoPathSearch search = new ParetoPathSearch(graph, ReachabilityBounds.forEndingType(graph, endingType));
+        search.setControl(control);
+        search.run();
+        allPaths.addAll(search.getParetoFront());
+        countRetainedPaths();
+        exploredPaths += search.getExploredPaths();
+        prunedBranches += search.getPrunedBranches();
+        addVisits(search.getNodeVisitCount());
+
+        log("Pareto search complete. Explored " + exploredPaths + " paths, skipped "
+          + prunedBranches + " covered branches and " + search.getDominatedPaths()
+          + " dominated partial paths.");
+        printStopNotice();
+        log("Found " + allPaths.size() + " Pareto-optimal paths.");
+        return new ArrayList<>(allPaths);
+    }
+
+    // Shortest path that collects at least the given share (0 to 1) of all the story's
+    // CGs; among equally short ones the one with more CGs, then the better ending.
+    // Returns null when no path collects that many.
+    public StoryPath findShortestPathWithCgShare(double cgShare) {
+        if (cgShare < 0.0 || cgShare > 1.0) {
+            throw new IllegalArgumentException("CG share must be between 0 and 1: " + cgShare);
+        }
+        int requiredCgs = (int) Math.ceil(cgShare * graph.getCgCount() - 1e-9);
+
+        // The shortest such path is never dominated, so it is on the Pareto front
+        StoryPath shortest = null;
+        for (StoryPath path : findParetoOptimalPaths()) {
+            if (path.getCgCount() >= requiredCgs
+                && (shortest == null || path.getPathLength() < shortest.getPathLength())) {
+                shortest = path;
+            }
+        }
+        return shortest;
+    }
+
+    // Fewest complete paths that together collect every CG some path can collect,
+    // planned by a CoveragePlanner with this finder's parallelism. Does not touch the
+    // results of the other searches.
+    public CoveragePlan findCgCoveragePlan() {
+        log("Planning the fewest playthroughs that collect every CG...");
+        CoveragePlanner planner = new CoveragePlanner(graph);
+        planner.setParallelism(parallelism);
+        CoveragePlan plan = planner.plan();
+
+        log("Coverage plan: " + plan.getPathCount() + " playthroughs collect " + plan.getCoveredCgIds().size()
+          + "/" + story.getTotalCgCount() + " CGs"
+          + (plan.isProvenMinimal() ? " (minimal)." : " (at least " + plan.getLowerBound() + " needed)."));
+        if (!plan.getUncoveredCgIds().isEmpty()) {
+            log("\u001B[33m" + (plan.isUncoveredProvenUnreachable() ? "No complete path collects: " : "Not covered: ")
+              + plan.getUncoveredCgIds() + "\u001B[0m");
+        }
+        return plan;
+    }
+
+    public StoryPath findOptimalPathToSpecificEnding(String targetEndingNodeId) {
+        startSearch(null);
         
-        List<Choice> choices = currentNode.getChoices();
-        if (choices.isEmpty()) {
-            return;
+        StoryNode targetNode = story.getNode(targetEndingNodeId);
+        if (targetNode == null || !targetNode.isEnding()) {
+            log("\u001B[31m"+"Target node not found or not an ending: " + targetEndingNodeId+ "\u001B[0m");
+            return null;
         }
         
-        for (Choice choice : choices) {
-            String nextNodeId = choice.getDestination();
-            
-            if (!visitedInPath.contains(nextNodeId)) {
-                Set<String> newVisited = new HashSet<>(visitedInPath);
-                newVisited.add(currentNodeId);
-                
-                List<Choice> newChoices = new ArrayList<>(extendedPath.getChoiceSequence());
-                newChoices.add(choice);
-                StoryPath pathWithChoice = new StoryPath(extendedPath.getNodeSequence(), newChoices, extendedPath.getCollectedCgs(), null, false);
-                backtrackToSpecificEnding(nextNodeId, pathWithChoice, newVisited, targetEndingNodeId);
+        int target = graph.getNodeIndex(targetEndingNodeId);
+        String cacheKey = cacheKey("ending", targetEndingNodeId);
+        if (restoreCachedResult(cacheKey)) {
+            log("Target ending: " + targetNode.getTitle());
+        } else {
+            engineUsed = resolveEngine(target);
+            log("Starting " + describe(engineUsed) + " search for specific ending...");
+            log("Target ending: " + targetNode.getTitle());
+
+            if (engineUsed == SearchEngine.BACKTRACKING || engineUsed == SearchEngine.PARALLEL) {
+                enumerate(target);
+            } else {
+                optimize(ReachabilityBounds.forTarget(graph, target));
+                countRetainedPaths();
             }
+            
+            log("Backtracking complete. Explored " + exploredPaths + " paths.");
+            printStopNotice();
+            storeCachedResult(cacheKey, null);
         }
+        log("Found " + statistics.getPathCount() + " paths to target ending.");
+        
+        return selectBestPathToSpecificEnding(targetEndingNodeId);
     }
     
     private StoryPath selectBestPathToSpecificEnding(String targetEndingNodeId) {
@@ -250,15 +934,13 @@ public class StoryPathFinder {
             return null;
         }
         
-        List<StoryPath> targetPaths = allPaths.stream()
-                                            .filter(path -> path.getNodeSequence().get(path.getNodeSequence().size() - 1).equals(targetEndingNodeId))
-                                            .collect(java.util.stream.Collectors.toList());
+        int target = graph.getNodeIndex(targetEndingNodeId);
+        List<StoryPath> targetPaths = rankPaths(node -> node == target);
         
         if (targetPaths.isEmpty()) {
             return null;
         }
         
-        targetPaths.sort((a, b) -> Integer.compare(b.calculateScore(), a.calculateScore()));
         StoryPath bestPath = targetPaths.get(0);        
         printSpecificEndingPathStatistics(bestPath, targetPaths, targetEndingNodeId);
         
@@ -268,24 +950,25 @@ public class StoryPathFinder {
     private void printSpecificEndingPathStatistics(StoryPath bestPath, List<StoryPath> targetPaths, String targetEndingNodeId) {
         StoryNode targetNode = story.getNode(targetEndingNodeId);
         
-        System.out.println("\n============== \u001B[44mRESULTS\u001B[0m ==============");
-        System.out.println("Target: " + (targetNode != null ? targetNode.getTitle() : targetEndingNodeId));
-        System.out.println("Best Path Found:");
-        System.out.println("  - Score: " + bestPath.calculateScore());
-        System.out.println("  - CGs Collected: " + bestPath.getCgCount() + "/" + story.getTotalCgCount());
-        System.out.println("  - Path Length: " + bestPath.getPathLength() + " nodes");
-        System.out.println("  - Ending Type: " + bestPath.getEndingType());
+        log("\n============== \u001B[44mRESULTS\u001B[0m ==============");
+        log("Target: " + (targetNode != null ? targetNode.getTitle() : targetEndingNodeId));
+        log("Best Path Found:");
+        log("  - Score: " + bestPath.calculateScore());
+        log("  - CGs Collected: " + bestPath.getCgCount() + "/" + story.getTotalCgCount());
+        log("  - Path Length: " + bestPath.getPathLength() + " nodes");
+        log("  - Ending Type: " + bestPath.getEndingType());
         
-        System.out.println("\u001B[34m"+"\n============== SEARCH STATISTICS ==============\u001B[0m");
-        System.out.println("Total exploration attempts: " + exploredPaths);
-        System.out.println("Successful paths to target: " + targetPaths.size());
+        log("\u001B[34m"+"\n============== SEARCH STATISTICS ==============\u001B[0m");
+        log("Total exploration attempts: " + exploredPaths);
+        printPruningStatistics();
+        log("Successful paths to target: " + statistics.getPathCount());
         
         if (targetPaths.size() > 1) {
-            System.out.println("\nTop paths to this ending:");
+            log("\nTop paths to this ending:");
             for (int i = 0; i < Math.min(3, targetPaths.size()); i++) {
                 StoryPath path = targetPaths.get(i);
-                System.out.println("  " + (i + 1) + ". Score: " + path.calculateScore() + 
-                                 ", CGs: " + path.getCgCount());
+                log("  " + (i + 1) + ". Score: " + path.calculateScore() + 
+                  ", CGs: " + path.getCgCount());
             }
         }
     }
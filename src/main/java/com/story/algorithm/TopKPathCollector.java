@@ -0,0 +1,136 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Keeps only the best K complete paths overall and the best K per ending type,
+// each in a min-heap, so memory stays O(K) however many paths the story has.
+// Paths are ranked by score and then by discovery order, which gives the same
+// ranking as a stable sort of every path by score.
+final class TopKPathCollector implements PathCollector {
+    // Worst entry first: lowest score, and among equal scores the latest found
+    private static final Comparator<Entry> WORST_FIRST =
+        Comparator.comparingInt((Entry entry) -> entry.score).thenComparingLong(entry -> -entry.sequence);
+
+    private final CompiledStoryGraph graph;
+    private final int limit;
+    private final PriorityQueue<Entry> best;
+    private final Map<String, PriorityQueue<Entry>> bestByEndingType;
+    private final PathStatistics statistics;
+    // Number of paths seen, which is also the discovery sequence of the next one
+    private long pathCount;
+
+    TopKPathCollector(CompiledStoryGraph graph, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Top-K limit must be at least 1: " + limit);
+        }
+        this.graph = graph;
+        this.limit = limit;
+        this.best = new PriorityQueue<>(WORST_FIRST);
+        this.bestByEndingType = new HashMap<>();
+        this.statistics = new PathStatistics(graph);
+    }
+
+    @Override
+    public void collect(WorkingPath path, int endingNode) {
+        String endingType = graph.getEndingType(endingNode);
+        int score = path.getScore(endingNode);
+
+        // Only materialize the path if one of the heaps will keep it
+        PriorityQueue<Entry> typeHeap = bestByEndingType.computeIfAbsent(endingType, type -> new PriorityQueue<>(WORST_FIRST));
+        if (accepts(best, score) || accepts(typeHeap, score)) {
+            offer(new Entry(path.toCompletePath(endingType), score, pathCount), typeHeap);
+        }
+
+        pathCount++;
+        statistics.add(path, endingNode);
+    }
+
+    @Override
+    public void append(PathCollector later) {
+        TopKPathCollector other = (TopKPathCollector) later;
+
+        // Replay the other collector's survivors in their discovery order. Anything it
+        // already dropped had K better paths after our own, so it cannot make the cut here.
+        Set<Entry> survivors = Collections.newSetFromMap(new IdentityHashMap<>());
+        survivors.addAll(other.best);
+        other.bestByEndingType.values().forEach(survivors::addAll);
+        List<Entry> ordered = new ArrayList<>(survivors);
+        ordered.sort(Comparator.comparingLong(entry -> entry.sequence));
+
+        for (Entry entry : ordered) {
+            String endingType = entry.path.getEndingType();
+            PriorityQueue<Entry> typeHeap = bestByEndingType.computeIfAbsent(endingType, type -> new PriorityQueue<>(WORST_FIRST));
+            offer(new Entry(entry.path, entry.score, pathCount + entry.sequence), typeHeap);
+        }
+
+        pathCount += other.pathCount;
+        statistics.merge(other.statistics);
+    }
+
+    @Override
+    public PathCollector newEmpty() {
+        return new TopKPathCollector(graph, limit);
+    }
+
+    @Override
+    public PathStatistics getStatistics() {
+        return statistics;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    // Best K paths overall, best first.
+    List<StoryPath> getTopPaths() {
+        return sorted(best);
+    }
+
+    // Best K paths with the given ending type, best first.
+    List<StoryPath> getTopPaths(String endingType) {
+        PriorityQueue<Entry> typeHeap = bestByEndingType.get(endingType);
+        return typeHeap != null ? sorted(typeHeap) : new ArrayList<>();
+    }
+
+    private boolean accepts(PriorityQueue<Entry> heap, int score) {
+        // A later path never wins a tie, so it must strictly beat the worst kept score
+        return heap.size() < limit || score > heap.peek().score;
+    }
+
+    private void offer(Entry entry, PriorityQueue<Entry> typeHeap) {
+        offer(best, entry);
+        offer(typeHeap, entry);
+    }
+
+    private void offer(PriorityQueue<Entry> heap, Entry entry) {
+        if (heap.size() < limit) {
+            heap.add(entry);
+        } else if (WORST_FIRST.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    private static List<StoryPath> sorted(PriorityQueue<Entry> heap) {
+        List<Entry> entries = new ArrayList<>(heap);
+        entries.sort(WORST_FIRST.reversed());
+        List<StoryPath> paths = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            paths.add(entry.path);
+        }
+        return paths;
+    }
+
+    private static final class Entry {
+        final StoryPath path;
+        final int score;
+        final long sequence;
+
+        Entry(StoryPath path, int score, long sequence) {
+            this.path = path;
+            this.score = score;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.story.algorithm;
+
+import java.util.*;
+import com.story.model.*;
+
+// Mutable path used by the backtracking search.
+// Nodes, choices and CGs are pushed on the way down and popped on the way back,
+// so a single instance serves the whole search and an immutable StoryPath is only
+// built when an ending is reached.
+class WorkingPath {
+    private final CompiledStoryGraph graph;
+    private int[] nodes;
+    private int[] edges;
+    private int[] trailMarks;
+    private int depth;
+    private int edgeDepth;
+
+    private final long[] cgBits;
+    // CGs newly collected by the pushed nodes, in push order
+    private int[] cgTrail;
+    private int trailSize;
+    // Total weight of the collected CGs, kept in step with the trail
+    private int cgScore;
+
+    WorkingPath(CompiledStoryGraph graph) {
+        this.graph = graph;
+        this.nodes = new int[16];
+        this.edges = new int[16];
+        this.trailMarks = new int[16];
+        this.cgBits = new long[graph.getCgIndex().wordCount()];
+        this.cgTrail = new int[Math.max(16, graph.getCgCount())];
+    }
+
+    void pushNode(int node) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            trailMarks = Arrays.copyOf(trailMarks, depth * 2);
+        }
+        nodes[depth] = node;
+        trailMarks[depth] = trailSize;
+        depth++;
+
+        for (int slot = graph.getCgStart(node); slot < graph.getCgEnd(node); slot++) {
+            int cg = graph.getCgAt(slot);
+            if (!CgBits.contains(cgBits, cg)) {
+                CgBits.set(cgBits, cg);
+                cgTrail[trailSize++] = cg;
+                cgScore += graph.getCgWeight(cg);
+            }
+        }
+    }
+
+    // Undoes the last pushNode, releasing the CGs that node collected.
+    void popNode() {
+        depth--;
+        int mark = trailMarks[depth];
+        while (trailSize > mark) {
+            int cg = cgTrail[--trailSize];
+            CgBits.clear(cgBits, cg);
+            cgScore -= graph.getCgWeight(cg);
+        }
+    }
+
+    void pushChoice(int edge) {
+        if (edgeDepth == edges.length) {
+            edges = Arrays.copyOf(edges, edgeDepth * 2);
+        }
+        edges[edgeDepth++] = edge;
+    }
+
+    void popChoice() {
+        edgeDepth--;
+    }
+
+    // Number of choices on the current path.
+    int getChoiceCount() {
+        return edgeDepth;
+    }
+
+    // The index-th choice taken, as an edge of the graph.
+    int getChoice(int index) {
+        return edges[index];
+    }
+
+    CompiledStoryGraph getGraph() {
+        return graph;
+    }
+
+    // Score the current path would have if it finished at endingNode.
+    // The ending node must already be pushed.
+    int getScore(int endingNode) {
+        return cgScore - depth * graph.getLengthPenalty() + graph.getEndingBonus(endingNode);
+    }
+
+    // The live CG bits of the current path. Callers must not modify the array.
+    long[] getCgBits() {
+        return cgBits;
+    }
+
+    int getCgCount() {
+        return trailSize;
+    }
+
+    // Total weight of the collected CGs.
+    int getCgScore() {
+        return cgScore;
+    }
+
+    // Number of nodes on the current path.
+    int getDepth() {
+        return depth;
+    }
+
+    // Snapshots the current state as a complete, immutable path.
+    StoryPath toCompletePath(String endingType) {
+        List<String> nodeSequence = new ArrayList<>(depth);
+        for (int i = 0; i < depth; i++) {
+            nodeSequence.add(graph.getNodeId(nodes[i]));
+        }
+
+        List<Choice> choiceSequence = new ArrayList<>(edgeDepth);
+        for (int i = 0; i < edgeDepth; i++) {
+            choiceSequence.add(graph.getChoice(edges[i]));
+        }
+
+        int score = cgScore - depth * graph.getLengthPenalty()
+                    + (endingType != null ? graph.getScoringModel().getEndingBonus(endingType) : 0);
+        return new StoryPath(nodeSequence, choiceSequence, graph.getCgIndex(), cgBits.clone(), endingType, true,
+                             graph.getScoringModel(), score);
+    }
+}
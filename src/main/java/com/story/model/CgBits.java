@@ -0,0 +1,100 @@
+package com.story.model;
+
+// Word operations on CG bit sets stored as long arrays.
+// Bit i of the set lives in word i / 64, so arrays of different lengths can be
+// combined: missing words are treated as zero.
+public final class CgBits {
+    
+    private CgBits() {
+    }
+    
+    public static int wordCount(int bitCount) {
+        return (bitCount + 63) >>> 6;
+    }
+    
+    public static boolean contains(long[] bits, int index) {
+        int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+    
+    public static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+    
+    public static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+    
+    public static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+    
+    // Returns a new array holding a | b.
+    public static long[] union(long[] a, long[] b) {
+        long[] longer = a.length >= b.length ? a : b;
+        long[] shorter = a.length >= b.length ? b : a;
+        long[] result = longer.clone();
+        for (int i = 0; i < shorter.length; i++) {
+            result[i] |= shorter[i];
+        }
+        return result;
+    }
+    
+    // Returns |a | b| without allocating.
+    public static int unionCardinality(long[] a, long[] b) {
+        int count = 0;
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            count += Long.bitCount(a[i] | b[i]);
+        }
+        for (int i = common; i < a.length; i++) {
+            count += Long.bitCount(a[i]);
+        }
+        for (int i = common; i < b.length; i++) {
+            count += Long.bitCount(b[i]);
+        }
+        return count;
+    }
+    
+    // Returns |a & ~b|, the number of bits of a missing from b, without allocating.
+    public static int andNotCardinality(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += Long.bitCount(a[i] & ~(i < b.length ? b[i] : 0L));
+        }
+        return count;
+    }
+    
+    // Returns true if every bit of subset is also set in superset.
+    public static boolean containsAll(long[] superset, long[] subset) {
+        for (int i = 0; i < subset.length; i++) {
+            long word = i < superset.length ? superset[i] : 0L;
+            if ((subset[i] & ~word) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Returns the index of the first set bit at or after fromIndex, or -1.
+    public static int nextSetBit(long[] bits, int fromIndex) {
+        int word = fromIndex >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long current = bits[word] & (-1L << fromIndex);
+        while (true) {
+            if (current != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(current);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+}
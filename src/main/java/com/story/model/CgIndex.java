@@ -0,0 +1,84 @@
+package com.story.model;
+
+import java.util.*;
+
+// Interns CG ids to dense indices so that sets of CGs can be stored as bit words.
+// Indices follow the sorted order of the CG ids, so the same set of CGs always
+// produces the same index.
+public final class CgIndex {
+    public static final CgIndex EMPTY = new CgIndex(new String[0]);
+    
+    private final String[] cgIds;
+    private final Map<String, Integer> indices;
+    
+    private CgIndex(String[] cgIds) {
+        this.cgIds = cgIds;
+        this.indices = new HashMap<>();
+        for (int i = 0; i < cgIds.length; i++) {
+            indices.put(cgIds[i], i);
+        }
+    }
+    
+    public static CgIndex of(Collection<String> cgIds) {
+        return new CgIndex(new TreeSet<>(cgIds).toArray(new String[0]));
+    }
+    
+    public int size() {
+        return cgIds.length;
+    }
+    
+    // Number of longs needed for a bit set over this index.
+    public int wordCount() {
+        return CgBits.wordCount(cgIds.length);
+    }
+    
+    // Returns the index of a CG id, or -1 if it is not interned here.
+    public int indexOf(String cgId) {
+        Integer index = indices.get(cgId);
+        return index != null ? index : -1;
+    }
+    
+    public String getCgId(int index) {
+        return cgIds[index];
+    }
+    
+    public boolean containsAll(Collection<String> cgIds) {
+        for (String cgId : cgIds) {
+            if (!indices.containsKey(cgId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Converts CG ids to bits. Every id must be interned in this index.
+    public long[] toBits(Collection<String> cgIds) {
+        long[] bits = new long[wordCount()];
+        for (String cgId : cgIds) {
+            int index = indexOf(cgId);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown CG: " + cgId);
+            }
+            CgBits.set(bits, index);
+        }
+        return bits;
+    }
+    
+    // Converts bits back to CG ids, in index order.
+    public Set<String> toSet(long[] bits) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int index = CgBits.nextSetBit(bits, 0); index >= 0; index = CgBits.nextSetBit(bits, index + 1)) {
+            result.add(cgIds[index]);
+        }
+        return result;
+    }
+    
+    public List<String> getCgIds() {
+        return Arrays.asList(cgIds.clone());
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("CgIndex{cgs=%d}", cgIds.length);
+    }
+}
@@ -0,0 +1,19 @@
+package com.story.model;
+
+// Decides how many points a path earns.
+// A path scores the weight of every distinct CG it collects, plus the bonus of
+// its ending type, minus a fixed penalty per scene. Weights, bonuses and the
+// penalty must not be negative, so that what a path can still collect is a
+// safe optimistic bound for the search.
+public interface ScoringModel {
+    // Ten points per CG and the classic best/secret/good/other ending bonuses.
+    ScoringModel DEFAULT = WeightedScoringModel.defaults();
+
+    int getCgWeight(String cgId);
+
+    // Bonus for finishing with the given ending type.
+    int getEndingBonus(String endingType);
+
+    // Points taken off for every node on the path.
+    int getLengthPenalty();
+}
@@ -9,14 +9,29 @@ public class Story {
     private final Map<String, StoryNode> nodes;
     private final Map<String, String> cgDescriptions;
     private final String startNodeId;
+    private final CgIndex cgIndex;
+    private final ScoringModel scoringModel;
     
     public Story(String title, String description, Map<String, StoryNode> nodes, 
                  Map<String, String> cgDescriptions, String startNodeId) {
+        this(title, description, nodes, cgDescriptions, startNodeId, ScoringModel.DEFAULT);
+    }
+    
+    public Story(String title, String description, Map<String, StoryNode> nodes, 
+                 Map<String, String> cgDescriptions, String startNodeId, ScoringModel scoringModel) {
         this.title = title;
         this.description = description;
         this.nodes = new HashMap<>(nodes);
         this.cgDescriptions = new HashMap<>(cgDescriptions);
         this.startNodeId = startNodeId;
+        this.scoringModel = scoringModel;
+        
+        // Intern every CG that appears on a node so paths can track CGs as bits
+        Set<String> allCgs = new HashSet<>();
+        for (StoryNode node : this.nodes.values()) {
+            allCgs.addAll(node.getCgs());
+        }
+        this.cgIndex = CgIndex.of(allCgs);
     }
     
     public String getTitle() {
@@ -52,11 +67,16 @@ public class Story {
     }
     
     public Set<String> getAllCgIds() {
-        Set<String> allCgs = new HashSet<>();
-        for (StoryNode node : nodes.values()) {
-            allCgs.addAll(node.getCgs());
-        }
-        return allCgs;
+        return new HashSet<>(cgIndex.getCgIds());
+    }
+    
+    public CgIndex getCgIndex() {
+        return cgIndex;
+    }
+    
+    // How paths through this story are scored unless a caller supplies another model.
+    public ScoringModel getScoringModel() {
+        return scoringModel;
     }
     
     public List<StoryNode> getEndingNodes() {
@@ -66,7 +86,7 @@ public class Story {
     }
     
     public int getTotalCgCount() {
-        return getAllCgIds().size();
+        return cgIndex.size();
     }
     
     public int getTotalNodeCount() {
@@ -97,6 +117,37 @@ public class Story {
         return true;
     }
     
+    // Ids of the nodes that differ from the previous version of this story in anything
+    // a search depends on: added, removed, or with other CGs, choices or ending. When
+    // the story starts at another node, both start nodes count as changed.
+    public Set<String> getChangedNodeIds(Story previous) {
+        Set<String> changed = new TreeSet<>();
+        for (StoryNode node : nodes.values()) {
+            StoryNode before = previous.getNode(node.getId());
+            if (before == null
+                || !node.getCgs().equals(before.getCgs())
+                || !node.getChoices().equals(before.getChoices())
+                || node.isEnding() != before.isEnding()
+                || !Objects.equals(node.getEndingType(), before.getEndingType())) {
+                changed.add(node.getId());
+            }
+        }
+        for (String nodeId : previous.nodes.keySet()) {
+            if (!nodes.containsKey(nodeId)) {
+                changed.add(nodeId);
+            }
+        }
+        if (!Objects.equals(startNodeId, previous.startNodeId)) {
+            if (startNodeId != null) {
+                changed.add(startNodeId);
+            }
+            if (previous.startNodeId != null) {
+                changed.add(previous.startNodeId);
+            }
+        }
+        return changed;
+    }
+    
     @Override
     public String toString() {
         return String.format("Story{title='%s', nodes=%d, totalCGs=%d}", 
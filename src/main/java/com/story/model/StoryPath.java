@@ -3,28 +3,74 @@ package com.story.model;
 import java.util.*;
 
 // Represents a path through the story
+// Collected CGs are kept as bit words over a CgIndex rather than a set of strings.
+// The score is computed once, under the path's ScoringModel, when the path is built.
 public class StoryPath {
+    public static final int POINTS_PER_CG = 10;
+    
     private final List<String> nodeSequence;
     private final List<Choice> choiceSequence;
-    private final Set<String> collectedCgs;
+    private final CgIndex cgIndex;
+    private final long[] cgBits;
     private final String endingType;
     private final boolean isComplete;
+    private final ScoringModel scoringModel;
+    private final int score;
     
     public StoryPath() {
         this.nodeSequence = new ArrayList<>();
         this.choiceSequence = new ArrayList<>();
-        this.collectedCgs = new HashSet<>();
+        this.cgIndex = CgIndex.EMPTY;
+        this.cgBits = new long[0];
         this.endingType = null;
         this.isComplete = false;
+        this.scoringModel = ScoringModel.DEFAULT;
+        this.score = 0;
     }
     
     public StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, 
                      Set<String> collectedCgs, String endingType, boolean isComplete) {
+        this(nodeSequence, choiceSequence, collectedCgs, endingType, isComplete, ScoringModel.DEFAULT);
+    }
+    
+    public StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, 
+                     Set<String> collectedCgs, String endingType, boolean isComplete,
+                     ScoringModel scoringModel) {
+        this(nodeSequence, choiceSequence, CgIndex.of(collectedCgs), collectedCgs, endingType, isComplete, scoringModel);
+    }
+    
+    private StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, CgIndex cgIndex,
+                      Collection<String> collectedCgs, String endingType, boolean isComplete,
+                      ScoringModel scoringModel) {
+        this(nodeSequence, choiceSequence, cgIndex, cgIndex.toBits(collectedCgs), endingType, isComplete, scoringModel);
+    }
+    
+    // Creates a path whose CGs are given as bits over cgIndex. The bits are not copied,
+    // so the caller must hand over an array it no longer modifies.
+    public StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, 
+                     CgIndex cgIndex, long[] cgBits, String endingType, boolean isComplete) {
+        this(nodeSequence, choiceSequence, cgIndex, cgBits, endingType, isComplete, ScoringModel.DEFAULT);
+    }
+    
+    public StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, 
+                     CgIndex cgIndex, long[] cgBits, String endingType, boolean isComplete,
+                     ScoringModel scoringModel) {
+        this(nodeSequence, choiceSequence, cgIndex, cgBits, endingType, isComplete, scoringModel,
+             computeScore(nodeSequence.size(), cgIndex, cgBits, endingType, scoringModel));
+    }
+    
+    // Creates a path whose score the search has already worked out incrementally.
+    public StoryPath(List<String> nodeSequence, List<Choice> choiceSequence, 
+                     CgIndex cgIndex, long[] cgBits, String endingType, boolean isComplete,
+                     ScoringModel scoringModel, int score) {
         this.nodeSequence = new ArrayList<>(nodeSequence);
         this.choiceSequence = new ArrayList<>(choiceSequence);
-        this.collectedCgs = new HashSet<>(collectedCgs);
+        this.cgIndex = cgIndex;
+        this.cgBits = cgBits;
         this.endingType = endingType;
         this.isComplete = isComplete;
+        this.scoringModel = scoringModel;
+        this.score = score;
     }
     
     // Creates a copy of this path with an additional node and choice.
@@ -37,19 +83,28 @@ public class StoryPath {
             newChoiceSequence.add(choice);
         }
         
-        Set<String> newCollectedCgs = new HashSet<>(collectedCgs);
-        if (newCgs != null) {
-            newCollectedCgs.addAll(newCgs);
+        if (newCgs == null || newCgs.isEmpty()) {
+            return new StoryPath(newNodeSequence, newChoiceSequence, 
+                               cgIndex, cgBits, endingType, isComplete, scoringModel);
         }
         
+        if (cgIndex.containsAll(newCgs)) {
+            long[] newCgBits = CgBits.union(cgBits, cgIndex.toBits(newCgs));
+            return new StoryPath(newNodeSequence, newChoiceSequence, 
+                               cgIndex, newCgBits, endingType, isComplete, scoringModel);
+        }
+        
+        // The new CGs are not interned in this path's index, so build a wider one
+        Set<String> newCollectedCgs = getCollectedCgs();
+        newCollectedCgs.addAll(newCgs);
         return new StoryPath(newNodeSequence, newChoiceSequence, 
-                           newCollectedCgs, endingType, isComplete);
+                           newCollectedCgs, endingType, isComplete, scoringModel);
     }
     
     // Creates a complete path by marking it as finished with an ending type.
     public StoryPath complete(String endingType) {
         return new StoryPath(nodeSequence, choiceSequence, 
-                           collectedCgs, endingType, true);
+                           cgIndex, cgBits, endingType, true, scoringModel);
     }
     
     public List<String> getNodeSequence() {
@@ -61,7 +116,20 @@ public class StoryPath {
     }
     
     public Set<String> getCollectedCgs() {
-        return new HashSet<>(collectedCgs);
+        return cgIndex.toSet(cgBits);
+    }
+    
+    public boolean hasCg(String cgId) {
+        int index = cgIndex.indexOf(cgId);
+        return index >= 0 && CgBits.contains(cgBits, index);
+    }
+    
+    public CgIndex getCgIndex() {
+        return cgIndex;
+    }
+    
+    public long[] getCgBits() {
+        return cgBits.clone();
     }
     
     public String getEndingType() {
@@ -72,8 +140,12 @@ public class StoryPath {
         return isComplete;
     }
     
+    public ScoringModel getScoringModel() {
+        return scoringModel;
+    }
+    
     public int getCgCount() {
-        return collectedCgs.size();
+        return CgBits.cardinality(cgBits);
     }
     
     public int getPathLength() {
@@ -84,25 +156,25 @@ public class StoryPath {
         return nodeSequence.isEmpty() ? null : nodeSequence.get(nodeSequence.size() - 1);
     }
     
-    // Calculates a score for this path based on CG count and ending type.
+    // Score of this path under its scoring model, computed when the path was built.
     public int calculateScore() {
-        int score = collectedCgs.size() * 10; // Base score from CGs
+        return score;
+    }
+    
+    // Bonus points the default scoring model awards for the given ending type.
+    public static int endingBonus(String endingType) {
+        return ScoringModel.DEFAULT.getEndingBonus(endingType);
+    }
+    
+    private static int computeScore(int nodeCount, CgIndex cgIndex, long[] cgBits,
+                                    String endingType, ScoringModel scoringModel) {
+        int score = -nodeCount * scoringModel.getLengthPenalty();
+        for (int cg = CgBits.nextSetBit(cgBits, 0); cg >= 0; cg = CgBits.nextSetBit(cgBits, cg + 1)) {
+            score += scoringModel.getCgWeight(cgIndex.getCgId(cg));
+        }
         
         if (endingType != null) {
-            switch (endingType.toLowerCase()) {
-                case "best":
-                    score += 50;
-                    break;
-                case "secret":
-                    score += 30;
-                    break;
-                case "good":
-                    score += 20;
-                    break;
-                default:
-                    score += 10;
-                    break;
-            }
+            score += scoringModel.getEndingBonus(endingType);
         }
         
         return score;
@@ -112,6 +184,6 @@ public class StoryPath {
     public String toString() {
         return String.format("StoryPath{nodes=%d, choices=%d, cgs=%d, ending='%s', complete=%s, score=%d}", 
                            nodeSequence.size(), choiceSequence.size(), 
-                           collectedCgs.size(), endingType, isComplete, calculateScore());
+                           getCgCount(), endingType, isComplete, calculateScore());
     }
 }
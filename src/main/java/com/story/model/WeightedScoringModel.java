@@ -0,0 +1,77 @@
+package com.story.model;
+
+import java.util.*;
+
+// Scoring model backed by lookup tables.
+// CGs without an explicit weight use the default weight, and ending types are
+// matched case-insensitively, falling back to the default ending bonus.
+public final class WeightedScoringModel implements ScoringModel {
+    public static final int DEFAULT_ENDING_BONUS = 10;
+
+    private final int defaultCgWeight;
+    private final Map<String, Integer> cgWeights;
+    private final int defaultEndingBonus;
+    private final Map<String, Integer> endingBonuses;
+    private final int lengthPenalty;
+
+    public WeightedScoringModel(int defaultCgWeight, Map<String, Integer> cgWeights,
+                                int defaultEndingBonus, Map<String, Integer> endingBonuses,
+                                int lengthPenalty) {
+        this.defaultCgWeight = requireNonNegative("Default CG weight", defaultCgWeight);
+        this.defaultEndingBonus = requireNonNegative("Default ending bonus", defaultEndingBonus);
+        this.lengthPenalty = requireNonNegative("Length penalty", lengthPenalty);
+
+        this.cgWeights = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : cgWeights.entrySet()) {
+            this.cgWeights.put(entry.getKey(), requireNonNegative("Weight of CG " + entry.getKey(), entry.getValue()));
+        }
+        this.endingBonuses = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : endingBonuses.entrySet()) {
+            this.endingBonuses.put(entry.getKey().toLowerCase(),
+                                   requireNonNegative("Bonus of ending " + entry.getKey(), entry.getValue()));
+        }
+    }
+
+    // The scoring every story used before models were configurable.
+    public static WeightedScoringModel defaults() {
+        return new WeightedScoringModel(StoryPath.POINTS_PER_CG, Collections.emptyMap(),
+                                        DEFAULT_ENDING_BONUS, defaultEndingBonuses(), 0);
+    }
+
+    // Bonuses of the named ending types in the default model, as a new mutable map.
+    public static Map<String, Integer> defaultEndingBonuses() {
+        Map<String, Integer> bonuses = new HashMap<>();
+        bonuses.put("best", 50);
+        bonuses.put("secret", 30);
+        bonuses.put("good", 20);
+        return bonuses;
+    }
+
+    @Override
+    public int getCgWeight(String cgId) {
+        return cgWeights.getOrDefault(cgId, defaultCgWeight);
+    }
+
+    @Override
+    public int getEndingBonus(String endingType) {
+        return endingBonuses.getOrDefault(endingType.toLowerCase(), defaultEndingBonus);
+    }
+
+    @Override
+    public int getLengthPenalty() {
+        return lengthPenalty;
+    }
+
+    private static int requireNonNegative(String what, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(what + " must not be negative: " + value);
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WeightedScoringModel{cgWeight=%d, customCgWeights=%d, endingBonuses=%s, default=%d, lengthPenalty=%d}",
+                           defaultCgWeight, cgWeights.size(), endingBonuses, defaultEndingBonus, lengthPenalty);
+    }
+}
@@ -53,7 +53,14 @@ public class StoryLoader {
                 cgDescriptions.put(cgId, cgObj.getString(cgId));
             }
             
-            return new Story(title, description, nodes, cgDescriptions, "start");
+            // Parse the optional scoring block
+            ScoringModel scoringModel = ScoringModel.DEFAULT;
+            JsonObject scoringObj = root.getObject("scoring");
+            if (scoringObj != null) {
+                scoringModel = parseScoringModel(scoringObj);
+            }
+            
+            return new Story(title, description, nodes, cgDescriptions, "start", scoringModel);
             
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse JSON: " + e.getMessage(), e);
@@ -95,6 +102,29 @@ public class StoryLoader {
         return new StoryNode(id, title, description, cgs, choices, isEnding, endingType);
     }
     
+    // Parses a scoring block. Every field is optional and defaults to the standard scoring.
+    private ScoringModel parseScoringModel(JsonObject scoringObj) {
+        Map<String, Integer> cgWeights = new HashMap<>();
+        JsonObject weightsObj = scoringObj.getObject("cgWeights");
+        if (weightsObj != null) {
+            for (String cgId : weightsObj.keys()) {
+                cgWeights.put(cgId, weightsObj.getInt(cgId));
+            }
+        }
+        
+        Map<String, Integer> endingBonuses = WeightedScoringModel.defaultEndingBonuses();
+        JsonObject bonusesObj = scoringObj.getObject("endingBonuses");
+        if (bonusesObj != null) {
+            for (String endingType : bonusesObj.keys()) {
+                endingBonuses.put(endingType.toLowerCase(), bonusesObj.getInt(endingType));
+            }
+        }
+        
+        return new WeightedScoringModel(scoringObj.getInt("defaultCgWeight", StoryPath.POINTS_PER_CG), cgWeights,
+                                        scoringObj.getInt("defaultEndingBonus", WeightedScoringModel.DEFAULT_ENDING_BONUS), endingBonuses,
+                                        scoringObj.getInt("lengthPenalty", 0));
+    }
+    
     // Creates a fallback story in case JSON loading fails.
     private Story createFallbackStory() {
         Map<String, StoryNode> nodes = new HashMap<>();
@@ -355,6 +385,11 @@ public class StoryLoader {
             return (Integer) map.get(key);
         }
         
+        public int getInt(String key, int defaultValue) {
+            Object value = map.get(key);
+            return value != null ? (Integer) value : defaultValue;
+        }
+        
         public boolean getBoolean(String key, boolean defaultValue) {
             Object value = map.get(key);
             return value != null ? (Boolean) value : defaultValue;